@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.ParsingOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Generates synthetic properties files and bundle groups.  Keys are made
+ * of words separated by dots, siblings sharing their parent key groups.
+ * Values are made of words from a small vocabulary, with some characters
+ * replaced by non-ASCII ones.  Some values are copies of previous ones,
+ * some others differ from previous ones by a single character.  The same
+ * arguments always generate the same content.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class BundleGenerator {
+
+    /** Words keys and values are made of. */
+    private static final String[] WORDS = (
+            "action button cancel dialog editor error " //$NON-NLS-1$
+          + "file folder general help label menu message " //$NON-NLS-1$
+          + "name open option page preference project " //$NON-NLS-1$
+          + "resource save search select status text " //$NON-NLS-1$
+          + "title tree value view warning") //$NON-NLS-1$
+                    .split(" "); //$NON-NLS-1$
+    /** Non-ASCII characters mixed in values: accented, greek, cyrillic,
+     *  chinese, japanese and korean. */
+    private static final String NON_ASCII_CHARS = 
+            "\u00e0\u00e9\u00e8\u00ea\u00e7" //$NON-NLS-1$
+          + "\u00f1\u00f6\u00fc\u00df\u00f8" //$NON-NLS-1$
+          + "\u03b1\u03b2\u0416\u042f\u4e2d" //$NON-NLS-1$
+          + "\u6587\u65e5\u672c\uac00\ud55c"; //$NON-NLS-1$
+    /** Locales of bundles following the default one. */
+    private static final Locale[] LOCALES = {
+        Locale.FRENCH, Locale.GERMAN, Locale.ITALIAN, Locale.JAPANESE,
+        Locale.KOREAN, Locale.CHINESE, Locale.CANADA_FRENCH, Locale.UK,
+    };
+    /** Share of the keys missing from bundles other than the default one. */
+    private static final double MISSING_SHARE = 0.05d;
+    /** One entry in so many has a comment. */
+    private static final int COMMENT_INTERVAL = 10;
+    /** One value in so many is a copy of a previous value. */
+    private static final int DUPLICATE_INTERVAL = 20;
+    /** One value in so many is similar to a previous value. */
+    private static final int SIMILAR_INTERVAL = 5;
+    /** Seed of generated content. */
+    private static final long SEED = 20041123L;
+
+    private final int keyCount;
+    private final int localeCount;
+    private final int keyDepth;
+    private final int valueLength;
+    private final double nonAsciiShare;
+
+    /**
+     * Constructor.
+     * @param keyCount number of keys
+     * @param localeCount number of bundles, the default one included
+     * @param keyDepth number of words in keys
+     * @param valueLength number of characters in values
+     * @param nonAsciiShare share of non-ASCII characters in values, 
+     *        from 0 to 1
+     */
+    public BundleGenerator(int keyCount, int localeCount, int keyDepth,
+            int valueLength, double nonAsciiShare) {
+        super();
+        this.keyCount = keyCount;
+        this.localeCount = localeCount;
+        this.keyDepth = keyDepth;
+        this.valueLength = valueLength;
+        this.nonAsciiShare = nonAsciiShare;
+    }
+
+    /**
+     * Gets the locales of generated bundles, the default bundle having a
+     * <code>null</code> locale.
+     * @return locales
+     */
+    public Locale[] getLocales() {
+        Locale[] locales = new Locale[localeCount];
+        for (int i = 1; i < localeCount; i++) {
+            if (i <= LOCALES.length) {
+                locales[i] = LOCALES[i - 1];
+            } else {
+                locales[i] = new Locale("x" + i); //$NON-NLS-1$
+            }
+        }
+        return locales;
+    }
+
+    /**
+     * Gets the generated keys, in generation order.
+     * @return keys
+     */
+    public String[] getKeys() {
+        String[] keys = new String[keyCount];
+        int branches = (int) Math.ceil(
+                Math.pow(keyCount, 1d / Math.max(keyDepth, 1)));
+        branches = Math.max(branches, 2);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < keyCount; i++) {
+            key.setLength(0);
+            int rest = i;
+            for (int level = 0; level < keyDepth; level++) {
+                if (level > 0) {
+                    key.append('.');
+                }
+                int branch = rest % branches;
+                rest /= branches;
+                key.append(WORDS[branch % WORDS.length]);
+                if (branch >= WORDS.length) {
+                    key.append(branch / WORDS.length);
+                }
+            }
+            keys[i] = key.toString();
+        }
+        return keys;
+    }
+
+    /**
+     * Generates the content of the properties file of a bundle, non-ASCII
+     * characters being encoded.
+     * @param localeIndex index of the bundle locale, 0 for the default
+     *        bundle
+     * @return properties file content
+     */
+    public String newProperties(int localeIndex) {
+        Random random = new Random(SEED + localeIndex);
+        String[] keys = getKeys();
+        StringBuilder text = new StringBuilder(
+                keyCount * (keyDepth * 8 + valueLength * 2 + 4));
+        StringBuilder value = new StringBuilder();
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0 && i % DUPLICATE_INTERVAL == 0) {
+                value.setLength(0);
+                value.append(values[random.nextInt(i)]);
+            } else if (i > 0 && i % SIMILAR_INTERVAL == 0) {
+                value.setLength(0);
+                value.append(values[random.nextInt(i)]);
+                if (value.length() > 0) {
+                    value.setCharAt(random.nextInt(value.length()), 'x');
+                }
+            } else {
+                generateValue(value, random);
+            }
+            values[i] = value.toString();
+            if (localeIndex > 0 && random.nextDouble() < MISSING_SHARE) {
+                continue;
+            }
+            if (i % COMMENT_INTERVAL == 0) {
+                text.append("# ").append(keys[i]).append('\n'); //$NON-NLS-1$
+            }
+            text.append(keys[i]).append(" = "); //$NON-NLS-1$
+            appendEncoded(text, value);
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a bundle group holding a bundle for each locale.
+     * @param options parsing options
+     * @return bundle group
+     */
+    public BundleGroup newBundleGroup(ParsingOptions options) {
+        BundleGroup bundleGroup = new BundleGroup();
+        Locale[] locales = getLocales();
+        for (int i = 0; i < locales.length; i++) {
+            bundleGroup.addBundle(locales[i], 
+                    PropertiesParser.parse(newProperties(i), options));
+        }
+        return bundleGroup;
+    }
+
+    /**
+     * Generates a value, replacing the previous one.
+     * @param value buffer receiving the value
+     * @param random random generator
+     */
+    private void generateValue(StringBuilder value, Random random) {
+        value.setLength(0);
+        while (value.length() < valueLength) {
+            if (value.length() > 0) {
+                value.append(' ');
+            }
+            value.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        value.setLength(valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            if (random.nextDouble() < nonAsciiShare) {
+                value.setCharAt(i, NON_ASCII_CHARS.charAt(
+                        random.nextInt(NON_ASCII_CHARS.length())));
+            }
+        }
+    }
+
+    /**
+     * Appends a value, with non-ASCII characters encoded.
+     * @param text text to append to
+     * @param value value to append
+     */
+    private static void appendEncoded(StringBuilder text, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c > 0x007e) {
+                String hex = Integer.toHexString(c | 0x10000).toUpperCase();
+                text.append("\\u").append(hex, 1, 5); //$NON-NLS-1$
+            } else {
+                text.append(c);
+            }
+        }
+    }
+}
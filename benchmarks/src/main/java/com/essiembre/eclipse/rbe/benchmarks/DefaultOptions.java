@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import org.eclipse.core.runtime.Preferences;
+
+import com.essiembre.eclipse.rbe.model.bundle.FormattingOptions;
+import com.essiembre.eclipse.rbe.model.bundle.ParsingOptions;
+
+/**
+ * Parsing and formatting options holding the default preferences of the
+ * plugin, created without the plugin running.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class DefaultOptions {
+
+    /**
+     * Constructor.
+     */
+    private DefaultOptions() {
+        super();
+    }
+
+    /**
+     * Creates formatting options with the default preferences of the
+     * plugin.
+     * @return formatting options
+     */
+    public static FormattingOptions newFormattingOptions() {
+        Preferences prefs = new Preferences();
+        prefs.setDefault(FormattingOptions.CONVERT_UNICODE_TO_ENCODED, true);
+        prefs.setDefault(
+                FormattingOptions.CONVERT_UNICODE_TO_ENCODED_UPPER, true);
+        prefs.setDefault(FormattingOptions.SPACES_AROUND_EQUAL_SIGNS, true);
+        prefs.setDefault(
+                FormattingOptions.KEY_GROUP_SEPARATOR, "."); //$NON-NLS-1$
+        prefs.setDefault(FormattingOptions.ALIGN_EQUAL_SIGNS, true);
+        prefs.setDefault(FormattingOptions.SHOW_GENERATOR, true);
+        prefs.setDefault(FormattingOptions.GROUP_KEYS, true);
+        prefs.setDefault(FormattingOptions.GROUP_LEVEL_DEEP, 1);
+        prefs.setDefault(FormattingOptions.GROUP_LINE_BREAKS, 1);
+        prefs.setDefault(FormattingOptions.GROUP_ALIGN_EQUAL_SIGNS, true);
+        prefs.setDefault(FormattingOptions.WRAP_CHAR_LIMIT, 80);
+        prefs.setDefault(FormattingOptions.WRAP_INDENT_SPACES, 8);
+        prefs.setDefault(FormattingOptions.NEW_LINE_TYPE, 
+                FormattingOptions.NEW_LINE_UNIX);
+        prefs.setDefault(FormattingOptions.KEEP_EMPTY_FIELDS, false);
+        return new FormattingOptions(prefs);
+    }
+
+    /**
+     * Creates parsing options with the default preferences of the plugin.
+     * @return parsing options
+     */
+    public static ParsingOptions newParsingOptions() {
+        Preferences prefs = new Preferences();
+        prefs.setDefault(ParsingOptions.CONVERT_ENCODED_TO_UNICODE, true);
+        return new ParsingOptions(prefs);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+
+/**
+ * Lays out the key tree of synthetic bundles.  A single tree is laid 
+ * out again and again: updaters used are never equal, for the tree not
+ * to reuse its previous layout.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyTreeBenchmark {
+
+    /** Key group separator. */
+    private static final String SEPARATOR = "."; //$NON-NLS-1$
+
+    private KeyTree keyTree;
+
+    /**
+     * Creates the key tree.
+     * @param bundles synthetic bundles
+     */
+    @Setup(Level.Trial)
+    public void setUp(SyntheticBundles bundles) {
+        keyTree = new KeyTree(
+                bundles.getBundleGroup(), new UnsharedFlatUpdater());
+    }
+
+    /**
+     * Lays out keys hierarchically.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree groupedLayout() {
+        keyTree.setUpdater(new UnsharedGroupedUpdater(SEPARATOR));
+        return keyTree;
+    }
+
+    /**
+     * Lays out keys flat.
+     * @return key tree
+     */
+    @Benchmark
+    public KeyTree flatLayout() {
+        keyTree.setUpdater(new UnsharedFlatUpdater());
+        return keyTree;
+    }
+
+    /**
+     * Grouped key tree updater equal to no other updater.
+     */
+    private static final class UnsharedGroupedUpdater 
+            extends GroupedKeyTreeUpdater {
+        /**
+         * Constructor.
+         * @param keyGroupSeparator key group separator
+         */
+        /*default*/ UnsharedGroupedUpdater(String keyGroupSeparator) {
+            super(keyGroupSeparator);
+        }
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+    }
+
+    /**
+     * Flat key tree updater equal to no other updater.
+     */
+    private static final class UnsharedFlatUpdater 
+            extends FlatKeyTreeUpdater {
+        /**
+         * Constructor.
+         */
+        /*default*/ UnsharedFlatUpdater() {
+            super();
+        }
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+    }
+}
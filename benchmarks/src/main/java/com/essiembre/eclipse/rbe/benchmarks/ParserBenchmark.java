@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesLayout;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Parses the properties file of a synthetic bundle.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    /**
+     * Parses a string, as when loading an editor.
+     * @param bundles synthetic bundles
+     * @return parsed bundle
+     */
+    @Benchmark
+    public Bundle parse(SyntheticBundles bundles) {
+        return PropertiesParser.parse(
+                bundles.getProperties(), bundles.getParsingOptions());
+    }
+
+    /**
+     * Parses a string, recording where entries are found, as when 
+     * reloading a source editor.
+     * @param bundles synthetic bundles
+     * @return parsed bundle
+     */
+    @Benchmark
+    public Bundle parseWithLayout(SyntheticBundles bundles) {
+        return PropertiesParser.parse(bundles.getProperties(), 
+                new PropertiesLayout(), bundles.getParsingOptions());
+    }
+
+    /**
+     * Parses properties read from a reader.
+     * @param bundles synthetic bundles
+     * @return parsed bundle
+     * @throws IOException never thrown by string readers
+     */
+    @Benchmark
+    public Bundle parseReader(SyntheticBundles bundles) throws IOException {
+        return PropertiesParser.parse(
+                new StringReader(bundles.getProperties()), 
+                bundles.getParsingOptions());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.visitors.SimilarValuesVisitor;
+import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
+
+/**
+ * Finds values similar to, or duplicate of, the values of entries of a
+ * synthetic bundle, taken in turn.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimilarValuesBenchmark {
+
+    /** Minimum proximity of similar values (default preference). */
+    private static final double PRECISION = 0.75d;
+    /** Number of entries values are searched for. */
+    private static final int SEARCHED_ENTRIES = 64;
+
+    private Bundle bundle;
+    private BundleEntry[] entries;
+    private int entryIndex;
+
+    /**
+     * Picks the entries values are searched for, spread over the bundle.
+     * @param bundles synthetic bundles
+     */
+    @Setup(Level.Trial)
+    public void setUp(SyntheticBundles bundles) {
+        bundle = bundles.getBundle();
+        List<BundleEntry> allEntries = new ArrayList<BundleEntry>();
+        for (Iterator<BundleEntry> iter = bundle.iterator(); 
+                iter.hasNext();) {
+            allEntries.add(iter.next());
+        }
+        int count = Math.min(SEARCHED_ENTRIES, allEntries.size());
+        entries = new BundleEntry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = allEntries.get(i * allEntries.size() / count);
+        }
+    }
+
+    /**
+     * Finds similar values by word count, the editor default.
+     * @return similar entries
+     */
+    @Benchmark
+    public Collection<BundleEntry> similarByWordCount() {
+        return bundle.getSimilars(
+                nextEntry(), WordCountAnalyzer.getInstance(), PRECISION);
+    }
+
+    /**
+     * Finds similar values by Levenshtein distance.
+     * @return similar entries
+     */
+    @Benchmark
+    public Collection<BundleEntry> similarByLevenshtein() {
+        return bundle.getSimilars(nextEntry(), 
+                LevenshteinDistanceAnalyzer.getInstance(), PRECISION);
+    }
+
+    /**
+     * Finds similar values by visiting all bundle entries.
+     * @return similar entries
+     */
+    @Benchmark
+    public Collection<BundleEntry> similarByVisitor() {
+        SimilarValuesVisitor visitor = new SimilarValuesVisitor(PRECISION);
+        bundle.accept(visitor, nextEntry());
+        return visitor.getSimilars();
+    }
+
+    /**
+     * Finds duplicate values.
+     * @return duplicate entries
+     */
+    @Benchmark
+    public Collection<BundleEntry> duplicates() {
+        return bundle.getDuplicates(nextEntry());
+    }
+
+    /**
+     * Gets the next entry to search values for.
+     * @return bundle entry
+     */
+    private BundleEntry nextEntry() {
+        BundleEntry entry = entries[entryIndex];
+        entryIndex = (entryIndex + 1) % entries.length;
+        return entry;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.FormattingOptions;
+import com.essiembre.eclipse.rbe.model.bundle.ParsingOptions;
+
+/**
+ * Synthetic bundles benchmarks run on, shaped by JMH parameters (which 
+ * can be changed from the command line, e.g. 
+ * <code>-p keyCount=50000 -p nonAsciiShare=0.5</code>).
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+@State(Scope.Benchmark)
+public class SyntheticBundles {
+
+    /** Number of keys. */
+    @Param({ "1000", "10000" })
+    public int keyCount;
+    /** Number of bundles, the default one included. */
+    @Param({ "4" })
+    public int localeCount;
+    /** Number of words in keys. */
+    @Param({ "3" })
+    public int keyDepth;
+    /** Number of characters in values. */
+    @Param({ "40" })
+    public int valueLength;
+    /** Share of non-ASCII characters in values. */
+    @Param({ "0.1" })
+    public double nonAsciiShare;
+
+    private FormattingOptions formattingOptions;
+    private ParsingOptions parsingOptions;
+    private String properties;
+    private BundleGroup bundleGroup;
+
+    /**
+     * Generates bundles.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        BundleGenerator generator = new BundleGenerator(
+                keyCount, localeCount, keyDepth, valueLength, nonAsciiShare);
+        formattingOptions = DefaultOptions.newFormattingOptions();
+        parsingOptions = DefaultOptions.newParsingOptions();
+        properties = generator.newProperties(0);
+        bundleGroup = generator.newBundleGroup(parsingOptions);
+    }
+
+    /**
+     * Gets the formatting options.
+     * @return formatting options
+     */
+    public FormattingOptions getFormattingOptions() {
+        return formattingOptions;
+    }
+
+    /**
+     * Gets the parsing options.
+     * @return parsing options
+     */
+    public ParsingOptions getParsingOptions() {
+        return parsingOptions;
+    }
+
+    /**
+     * Gets the properties file content of the default bundle.
+     * @return properties file content
+     */
+    public String getProperties() {
+        return properties;
+    }
+
+    /**
+     * Gets the bundle group.
+     * @return bundle group
+     */
+    public BundleGroup getBundleGroup() {
+        return bundleGroup;
+    }
+
+    /**
+     * Gets the default bundle.
+     * @return default bundle
+     */
+    public Bundle getBundle() {
+        return bundleGroup.getBundle(null);
+    }
+}
@@ -21,7 +21,9 @@
 package com.essiembre.eclipse.rbe;
 
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.*;
 import org.osgi.framework.BundleContext;
@@ -141,6 +143,16 @@ public class RBEPlugin extends AbstractUIPlugin {
                 getString(key), arg1, arg2, arg3);
     }
     
+    /**
+     * Logs an error in the plugin's log.
+     * @param message error message
+     * @param exception exception causing the error, or <code>null</code>
+     */
+    public static void log(String message, Throwable exception) {
+        RBEPlugin.getDefault().getLog().log(new Status(
+                IStatus.ERROR, ID, 0, message, exception));
+    }
+
     /**
      * Returns the plugin's resource bundle.
      * @return resource bundle
@@ -21,7 +21,10 @@
 package com.essiembre.eclipse.rbe.model;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 //import org.eclipse.core.internal.runtime.ListenerList; >= Eclipse 3.2
 //import org.eclipse.core.runtime.ListenerList;           < Eclipse 3.2
@@ -40,12 +43,21 @@ public abstract class Model {
      */
     /** Listeners for this object. */
     private final List<IDeltaListener> listeners = new ArrayList<IDeltaListener>();
+    /** Number of batches in progress (batches can be nested). */
+    private int batchDepth;
+    /** Events held until current batch is committed. */
+    private final Set<BatchedEvent> batchedEvents = 
+            new LinkedHashSet<BatchedEvent>();
     
     /**
      * Fires an "add" event.
      * @param added object added
      */
     protected void fireAdd(Object added) {
+        if (batchDepth > 0) {
+            batchedEvents.add(new BatchedEvent(BatchedEvent.ADD, added));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.add(new DeltaEvent(added));
         }
@@ -56,6 +68,10 @@ public abstract class Model {
      * @param removed object removed
      */
     protected void fireRemove(Object removed) {
+        if (batchDepth > 0) {
+            batchedEvents.add(new BatchedEvent(BatchedEvent.REMOVE, removed));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.remove(new DeltaEvent(removed));
         }
@@ -66,6 +82,10 @@ public abstract class Model {
      * @param modified object modified
      */
     protected void fireModify(Object modified) {
+        if (batchDepth > 0) {
+            batchedEvents.add(new BatchedEvent(BatchedEvent.MODIFY, modified));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.modify(new DeltaEvent(modified));
         }
@@ -76,11 +96,77 @@ public abstract class Model {
      * @param selected the selected object.
      */
     protected void fireSelect(Object selected) {
+        if (batchDepth > 0) {
+            batchedEvents.add(new BatchedEvent(BatchedEvent.SELECT, selected));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.select(new DeltaEvent(selected));
         }
     }
 
+    /**
+     * Starts a batch of modifications.  Until the batch is committed, 
+     * events are held back instead of being fired.  Batches can be nested,
+     * events are fired when the outermost batch is committed.
+     * @see #commitBatch()
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Commits a batch of modifications started with 
+     * {@link #beginBatch()}.  Events held back during the batch are fired,
+     * in order, each event being fired only once for a given object (e.g.
+     * modifying the same object many times results in a single "modify"
+     * event).
+     */
+    public void commitBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException(
+                    "No batch in progress."); //$NON-NLS-1$
+        }
+        batchDepth--;
+        if (batchDepth > 0 || batchedEvents.isEmpty()) {
+            return;
+        }
+        List<BatchedEvent> events = 
+                new ArrayList<BatchedEvent>(batchedEvents);
+        batchedEvents.clear();
+        for (Iterator<BatchedEvent> iter = events.iterator(); 
+                iter.hasNext();) {
+            BatchedEvent event = iter.next();
+            switch (event.type) {
+            case BatchedEvent.ADD:
+                fireAdd(event.receiver);
+                break;
+            case BatchedEvent.REMOVE:
+                fireRemove(event.receiver);
+                break;
+            case BatchedEvent.MODIFY:
+                fireModify(event.receiver);
+                break;
+            default:
+                fireSelect(event.receiver);
+            }
+        }
+    }
+
+    /**
+     * Runs the given modifications as a batch.
+     * @param runnable modifications to run
+     * @see #beginBatch()
+     */
+    public void runBatch(Runnable runnable) {
+        beginBatch();
+        try {
+            runnable.run();
+        } finally {
+            commitBatch();
+        }
+    }
+
     /**
      * Adds a listener to this instance.
      * @param listener listener to add
@@ -95,4 +181,51 @@ public abstract class Model {
     public void removeListener(IDeltaListener listener) {
         listeners.remove(listener);
     }
+
+    /**
+     * Event held back until a batch is committed.
+     */
+    private static final class BatchedEvent {
+        /** "Add" event type. */
+        static final int ADD = 0;
+        /** "Remove" event type. */
+        static final int REMOVE = 1;
+        /** "Modify" event type. */
+        static final int MODIFY = 2;
+        /** "Select" event type. */
+        static final int SELECT = 3;
+
+        /** Event type. */
+        final int type;
+        /** Object acted upon. */
+        final Object receiver;
+
+        /**
+         * Constructor.
+         * @param type event type
+         * @param receiver object acted upon
+         */
+        BatchedEvent(int type, Object receiver) {
+            this.type = type;
+            this.receiver = receiver;
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BatchedEvent)) {
+                return false;
+            }
+            BatchedEvent event = (BatchedEvent) obj;
+            return type == event.type && receiver == event.receiver;
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return 31 * type + System.identityHashCode(receiver);
+        }
+    }
 }
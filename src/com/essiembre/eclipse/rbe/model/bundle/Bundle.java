@@ -21,6 +21,8 @@
 package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -29,7 +31,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
 import com.essiembre.eclipse.rbe.model.Model;
+import com.essiembre.eclipse.rbe.model.utils.AnalyzedText;
+import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.WordCountIndex;
 
 
 /**
@@ -43,8 +52,19 @@ public class Bundle extends Model implements IBundleVisitable {
     private String comment;
     /** Bundle locale. */
     private Locale locale;
-    /** Bundle entries (key=key value=BundleEntry). */
+    /** Bundle entries (key=key value=BundleEntry).  Only changed on the
+     *  UI thread, and locked while changed so that other threads can look
+     *  for duplicate and similar values. */
     private final Map<String, BundleEntry> entries = new HashMap<String, BundleEntry>();
+    /** Bundle entries having a non-empty value (key=value; 
+     *  value=BundleEntry list). */
+    private final Map<String, List<BundleEntry>> valueEntries =
+            new HashMap<String, List<BundleEntry>>();
+    /** Words of bundle entry values (lower case), created when first 
+     *  looking for similar values. */
+    private WordCountIndex<BundleEntry> wordIndex;
+    /** Number of changes made so far to indexed values. */
+    private int valueChangeCount;
     /** Bundle group (parent). */
     private BundleGroup bundleGroup;
     
@@ -98,7 +118,8 @@ public class Bundle extends Model implements IBundleVisitable {
     }
     
     /**
-     * Gets the bundle entry matcing the given key.
+     * Gets the bundle entry matcing the given key.  To be called on the UI
+     * thread.
      * @param key a bundle entry key
      * @return the matching bundle entry, or <code>null</code>
      */
@@ -114,15 +135,31 @@ public class Bundle extends Model implements IBundleVisitable {
         BundleEntry oldEntry = entries.get(entry.getKey());
         if (oldEntry != null) {
             if (!oldEntry.equals(entry)) {
-                entries.put(entry.getKey(), entry);
+                synchronized (entries) {
+                    entries.put(entry.getKey(), entry);
+                    unindexValue(oldEntry);
+                    indexValue(entry);
+                }
                 entry.setBundle(this);
                 entry.setLocale(locale);
+                if (bundleGroup != null) {
+                    bundleGroup.valueChanged(this, entry.getKey(), 
+                            BundleGroup.hasValue(entry));
+                }
                 fireModify(oldEntry);
             }
         } else if (entry.getKey().trim().length() > 0) {
-            entries.put(entry.getKey(), entry);
+            synchronized (entries) {
+                entries.put(entry.getKey(), entry);
+                indexValue(entry);
+            }
             entry.setBundle(this);
             entry.setLocale(locale);
+            if (bundleGroup != null) {
+                bundleGroup.keyAdded(entry.getKey());
+                bundleGroup.valueChanged(this, entry.getKey(), 
+                        BundleGroup.hasValue(entry));
+            }
             fireAdd(entry);
         }
     }
@@ -132,11 +169,210 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to remove
      */
     protected void removeEntry(BundleEntry entry) {
-        BundleEntry removedEntry = entries.get(entry.getKey());
-        entries.remove(entry.getKey());
+        BundleEntry removedEntry;
+        synchronized (entries) {
+            removedEntry = entries.remove(entry.getKey());
+            if (removedEntry != null) {
+                unindexValue(removedEntry);
+            }
+        }
+        if (removedEntry != null && bundleGroup != null) {
+            bundleGroup.keyRemoved(removedEntry.getKey());
+            bundleGroup.valueChanged(this, removedEntry.getKey(), false);
+        }
         fireRemove(removedEntry);
     }
     
+    /**
+     * Gets bundle entries other than the given one having the same value.
+     * Entries with an empty value have no duplicates.  Safe to call from
+     * any thread.
+     * @param entry bundle entry to find duplicates for
+     * @return bundle entries with duplicate values
+     */
+    public Collection<BundleEntry> getDuplicates(BundleEntry entry) {
+        Collection<BundleEntry> duplicates = new ArrayList<BundleEntry>();
+        if (entry == null) {
+            return duplicates;
+        }
+        synchronized (entries) {
+            List<BundleEntry> sameValue = valueEntries.get(entry.getValue());
+            if (sameValue != null) {
+                for (BundleEntry duplicate : sameValue) {
+                    if (duplicate != entry) {
+                        duplicates.add(duplicate);
+                    }
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Gets groups of two or more bundle entries sharing the same value.
+     * @return collection of duplicate value clusters
+     */
+    public Collection<Collection<BundleEntry>> getDuplicateClusters() {
+        Collection<Collection<BundleEntry>> clusters = 
+                new ArrayList<Collection<BundleEntry>>();
+        synchronized (entries) {
+            for (List<BundleEntry> sameValue : valueEntries.values()) {
+                if (sameValue.size() > 1) {
+                    clusters.add(Collections.unmodifiableList(
+                            new ArrayList<BundleEntry>(sameValue)));
+                }
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Gets bundle entries other than the given one having a value similar
+     * (case insensitive) to the given entry value, according to the given
+     * proximity analyzer.  When the analyzer is 
+     * <code>WordCountAnalyzer</code>, only entries sharing enough words
+     * with the given entry are analysed.
+     * @param entry bundle entry to find similar values for
+     * @param analyzer proximity analyzer
+     * @param minProximity minimum proximity level for values to be similar
+     * @return bundle entries with similar values
+     */
+    public Collection<BundleEntry> getSimilars(
+            BundleEntry entry, ProximityAnalyzer analyzer, 
+            double minProximity) {
+        return getSimilars(
+                entry, analyzer, minProximity, new NullProgressMonitor());
+    }
+
+    /**
+     * Gets bundle entries other than the given one having a value similar
+     * (case insensitive) to the given entry value, according to the given
+     * proximity analyzer, unless cancelled.  Safe to call from any thread:
+     * values are analysed outside of the lock, from the entries found when
+     * called.
+     * @param entry bundle entry to find similar values for
+     * @param analyzer proximity analyzer
+     * @param minProximity minimum proximity level for values to be similar
+     * @param monitor progress monitor checked for cancellation
+     * @return bundle entries with similar values, or <code>null</code> if
+     *         cancelled
+     */
+    public Collection<BundleEntry> getSimilars(
+            BundleEntry entry, ProximityAnalyzer analyzer, 
+            double minProximity, IProgressMonitor monitor) {
+        Collection<BundleEntry> similars = new ArrayList<BundleEntry>();
+        if (entry == null) {
+            return similars;
+        }
+        AnalyzedText value = entry.getAnalyzedValue();
+        Collection<BundleEntry> candidates;
+        if (analyzer == WordCountAnalyzer.getInstance()) {
+            candidates = getWordCandidates(value, minProximity, monitor);
+            if (candidates == null) {
+                return null;
+            }
+        } else {
+            synchronized (entries) {
+                candidates = new ArrayList<BundleEntry>(entries.values());
+            }
+        }
+        for (BundleEntry candidate : candidates) {
+            if (monitor.isCanceled()) {
+                return null;
+            }
+            if (candidate != entry
+                    && candidate.getValue().length() > 0
+                    && analyzer.analyse(
+                            candidate.getAnalyzedValue(), value,
+                            minProximity) >= minProximity) {
+                similars.add(candidate);
+            }
+        }
+        return similars;
+    }
+
+    /**
+     * Gets bundle entries sharing enough words with the given value for
+     * their values to be similar.  The word index is created outside of
+     * the lock when first needed, and only kept if no value changed
+     * meanwhile.
+     * @param value analysed value to find candidates for
+     * @param minProximity minimum proximity level for values to be similar
+     * @param monitor progress monitor checked for cancellation
+     * @return candidate bundle entries, or <code>null</code> if cancelled
+     */
+    private Collection<BundleEntry> getWordCandidates(
+            AnalyzedText value, double minProximity,
+            IProgressMonitor monitor) {
+        List<BundleEntry> indexedEntries;
+        int changeCount;
+        synchronized (entries) {
+            if (wordIndex != null) {
+                return wordIndex.getCandidates(value, minProximity);
+            }
+            indexedEntries = new ArrayList<BundleEntry>(entries.values());
+            changeCount = valueChangeCount;
+        }
+        WordCountIndex<BundleEntry> index = new WordCountIndex<BundleEntry>();
+        for (BundleEntry indexedEntry : indexedEntries) {
+            if (monitor.isCanceled()) {
+                return null;
+            }
+            if (indexedEntry.getValue().length() > 0) {
+                index.add(indexedEntry, indexedEntry.getAnalyzedValue());
+            }
+        }
+        synchronized (entries) {
+            if (wordIndex == null && changeCount == valueChangeCount) {
+                wordIndex = index;
+            }
+        }
+        return index.getCandidates(value, minProximity);
+    }
+
+    /**
+     * Adds a bundle entry to the value index.
+     * @param entry bundle entry to index
+     */
+    private void indexValue(BundleEntry entry) {
+        if (entry.getValue().length() == 0) {
+            return;
+        }
+        valueChangeCount++;
+        if (wordIndex != null) {
+            wordIndex.add(entry, entry.getAnalyzedValue());
+        }
+        List<BundleEntry> sameValue = valueEntries.get(entry.getValue());
+        if (sameValue == null) {
+            sameValue = new ArrayList<BundleEntry>(1);
+            valueEntries.put(entry.getValue(), sameValue);
+        }
+        sameValue.add(entry);
+    }
+    /**
+     * Removes a bundle entry from the value index.
+     * @param entry bundle entry to remove from the index
+     */
+    private void unindexValue(BundleEntry entry) {
+        valueChangeCount++;
+        if (wordIndex != null) {
+            wordIndex.remove(entry);
+        }
+        List<BundleEntry> sameValue = valueEntries.get(entry.getValue());
+        if (sameValue != null) {
+            for (Iterator<BundleEntry> iter = sameValue.iterator(); 
+                    iter.hasNext();) {
+                if (iter.next() == entry) {
+                    iter.remove();
+                    break;
+                }
+            }
+            if (sameValue.isEmpty()) {
+                valueEntries.remove(entry.getValue());
+            }
+        }
+    }
+    
     /**
      * Renames a bundle entry key.
      * @param oldKey the bundle entry key to rename
@@ -193,6 +429,7 @@ public class Bundle extends Model implements IBundleVisitable {
     
     /**
      * Iterates through the <code>BundleEntry</code> objects in this bundle.
+     * To be called on the UI thread.
      * @return an iterator
      */
     public Iterator<BundleEntry> iterator() {
@@ -215,7 +452,8 @@ public class Bundle extends Model implements IBundleVisitable {
     }
     
     /**
-     * Gets sorted resource bundle keys for this bundle.
+     * Gets sorted resource bundle keys for this bundle.  To be called on
+     * the UI thread.
      * @return resource bundle keys
      */
     public Set<String> getKeys() {
@@ -231,19 +469,19 @@ public class Bundle extends Model implements IBundleVisitable {
      */    
     protected void copyFrom(Bundle bundle) {
         setComment(bundle.getComment());
-        // Remove deleted entries
+        // Remove deleted entries, listeners being notified outside the lock
+        List<BundleEntry> entriesToRemove = new ArrayList<BundleEntry>();
         synchronized (entries) {
-            List<BundleEntry> entriesToRemove = new ArrayList<BundleEntry>();
             for (Iterator<BundleEntry> iter = iterator(); iter.hasNext();) {
                 BundleEntry localEntry = iter.next();
                 if (bundle.getEntry(localEntry.getKey()) == null) {
                     entriesToRemove.add(localEntry);
                 }
             }    
-            for (BundleEntry entry : entriesToRemove) {
-                removeEntry(entry);
-            }        
         }
+        for (BundleEntry entry : entriesToRemove) {
+            removeEntry(entry);
+        }        
         
         // Add existing/new entries
         for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
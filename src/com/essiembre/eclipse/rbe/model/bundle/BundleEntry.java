@@ -22,6 +22,8 @@ package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.Locale;
 
+import com.essiembre.eclipse.rbe.model.utils.AnalyzedText;
+
 /**
  * Represents an entry in a properties file.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
@@ -41,6 +43,9 @@ public final class BundleEntry implements IBundleVisitable {
     private String value;
     /** Associated bundle (parent). */
     private Bundle bundle;
+    /** Lower case value analysed for proximity, created when first 
+     *  needed. */
+    private AnalyzedText analyzedValue;
 
     /**
      * Constructor.  Keys and value are <code>null</code> safe.
@@ -110,6 +115,20 @@ public final class BundleEntry implements IBundleVisitable {
         return value;
     }
 
+    /**
+     * Gets the lower case value, along with the forms proximity analyzers
+     * work on.  Since values never change, this is computed only once.
+     * @return analysed lower case value
+     */
+    public AnalyzedText getAnalyzedValue() {
+        AnalyzedText analyzed = analyzedValue;
+        if (analyzed == null) {
+            analyzed = new AnalyzedText(value.toLowerCase());
+            analyzedValue = analyzed;
+        }
+        return analyzed;
+    }
+
     /**
      * Gets the "commented" attribute.
      * @return <code>true</code> if this entry is commented out.
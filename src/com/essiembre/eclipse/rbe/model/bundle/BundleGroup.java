@@ -21,12 +21,13 @@
 package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -43,9 +44,25 @@ public class BundleGroup extends Model implements IBundleVisitable {
     /** Bundles forming the group (key=Locale; value=Bundle). */
     private final Map<Locale, Bundle> bundles = new HashMap<Locale, Bundle>();
     
-    //TODO tentative:
-    private final SortedSet<String> keys = new TreeSet<String>();
-//	private final List<String> keys = new LinkedList<String>();
+    /** Keys of all bundles, sorted. */
+    private final SortedKeySet keys = new SortedKeySet();
+    /** Number of bundles holding each key (key=key; value=count). */
+    private final Map<String, Integer> keyCounts = 
+            new HashMap<String, Integer>();
+    /** Bit of each bundle locale in value bit sets (key=Locale). */
+    private final Map<Locale, Integer> localeBits = 
+            new HashMap<Locale, Integer>();
+    /** Locale bits of bundles holding a value for each key (key=key). */
+    private final Map<String, BitSet> keyValues = 
+            new HashMap<String, BitSet>();
+    /** Keys missing a value in at least one bundle, sorted. */
+    private final SortedSet<String> incompleteKeys = new TreeSet<String>();
+    /** Number of changes made to bundles and entries of this group. */
+    private int modificationCount;
+    /** Number of keys added to or removed from this group. */
+    private int keyChangeCount;
+    /** Number of keys which became complete or incomplete. */
+    private int completenessChangeCount;
     
     /**
      * Constructor.
@@ -85,14 +102,53 @@ public class BundleGroup extends Model implements IBundleVisitable {
         Bundle localBundle = bundles.get(locale);
         bundle.setLocale(locale);
         bundle.setBundleGroup(this);
+        modificationCount++;
         if (localBundle == null) {
             bundles.put(locale, bundle);
-            refreshKeys();
+            localeBits.put(locale, new Integer(localeBits.size()));
+            for (Iterator<BundleEntry> iter = bundle.iterator(); 
+                    iter.hasNext();) {
+                BundleEntry entry = iter.next();
+                keyAdded(entry.getKey());
+                valueChanged(bundle, entry.getKey(), hasValue(entry));
+            }
+            // keys this bundle does not hold are now incomplete
+            for (String key : keys) {
+                updateCompleteness(key);
+            }
             fireAdd(bundle);
         } else { // TODO if (!localBundle.equals(bundle)) {
             localBundle.copyFrom(bundle);
-            refreshKeys();
-            fireModify(bundle);
+            fireModify(localBundle);
+        }
+    }
+
+    /**
+     * Replaces some entries of the bundle matching the given locale.
+     * Entries matching the given keys are removed, unless found in the
+     * given bundle, and entries of the given bundle are added (or
+     * modified).  Other entries are left untouched.
+     * Meant for synchronizing a bundle with changes made to its source,
+     * no modification event is fired for the bundle itself (only for
+     * its entries).
+     * @param locale locale of bundle to update
+     * @param oldKeys keys of entries being replaced
+     * @param bundle bundle holding replacement entries
+     */
+    public void replaceBundleEntries(
+            Locale locale, Collection<String> oldKeys, Bundle bundle) {
+        Bundle localBundle = getBundle(locale);
+        if (localBundle == null) {
+            return;
+        }
+        for (String key : oldKeys) {
+            BundleEntry entry = localBundle.getEntry(key);
+            if (entry != null && bundle.getEntry(key) == null) {
+                localBundle.removeEntry(entry);
+            }
+        }
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            localBundle.addEntry(iter.next());
         }
     }
 
@@ -120,7 +176,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
                 bundleEntry.setBundle(bundle);
                 bundleEntry.setLocale(locale);
                 bundle.addEntry(bundleEntry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -153,7 +208,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, oldKey);
             if (entry != null) {
                 bundle.renameKey(oldKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -206,7 +260,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry origEntry = getBundleEntry(locale, origKey);
             if (origEntry != null) {
                 bundle.copyKey(origKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -223,7 +276,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, key);
             if (entry != null) {
                 bundle.removeEntry(entry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -260,6 +312,25 @@ public class BundleGroup extends Model implements IBundleVisitable {
         return entries;
     }
     
+    /**
+     * Gets, for each bundle, groups of two or more bundle entries sharing
+     * the same value.  Bundles without duplicate values are omitted.
+     * @return duplicate value clusters (key=Locale; value=clusters)
+     */
+    public Map<Locale, Collection<Collection<BundleEntry>>> 
+            getDuplicateClusters() {
+        Map<Locale, Collection<Collection<BundleEntry>>> clusters =
+                new HashMap<Locale, Collection<Collection<BundleEntry>>>();
+        for (Bundle bundle : bundles.values()) {
+            Collection<Collection<BundleEntry>> bundleClusters =
+                    bundle.getDuplicateClusters();
+            if (!bundleClusters.isEmpty()) {
+                clusters.put(bundle.getLocale(), bundleClusters);
+            }
+        }
+        return clusters;
+    }
+    
     /**
      * Returns true if the supplied key is already existing in this group.
      * 
@@ -268,13 +339,7 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @return  true <=> The key is already existing.
      */
     public boolean containsKey(String key) {
-        for (Locale locale : bundles.keySet()) {
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                return (true);
-            }
-        }
-        return (false);
+        return keyCounts.containsKey(key);
     }
     
     /**
@@ -296,25 +361,147 @@ public class BundleGroup extends Model implements IBundleVisitable {
 
     /**
      * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * @return sorted set of resource bundle keys.
      */
-    public SortedSet<String> getKeys() {
+    public SortedKeySet getKeys() {
         return keys;
     }
 
     /**
-     * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
-     */
-//    public Set getKeys() {
-    private Set<String> refreshKeys() {
-        //Set keys = new TreeSet();
-        keys.clear();
-        for (Iterator<Bundle> iter = iterator(); iter.hasNext();) {
-            keys.addAll(iter.next().getKeys());
+     * Notifies this group that a bundle of this group now holds the
+     * given key.
+     * @param key key added to a bundle
+     */
+    protected void keyAdded(String key) {
+        modificationCount++;
+        Integer count = keyCounts.get(key);
+        if (count == null) {
+            keyCounts.put(key, new Integer(1));
+            keys.add(key);
+            keyChangeCount++;
+        } else {
+            keyCounts.put(key, new Integer(count.intValue() + 1));
         }
-        return keys;
-//        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Notifies this group that a bundle of this group no longer holds the
+     * given key.
+     * @param key key removed from a bundle
+     */
+    protected void keyRemoved(String key) {
+        modificationCount++;
+        Integer count = keyCounts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count.intValue() == 1) {
+            keyCounts.remove(key);
+            keys.remove(key);
+            keyChangeCount++;
+        } else {
+            keyCounts.put(key, new Integer(count.intValue() - 1));
+        }
+    }
+
+    /**
+     * Notifies this group that whether a bundle of this group holds a value
+     * for the given key may have changed.
+     * @param bundle bundle of this group
+     * @param key key of the added, modified or removed entry
+     * @param hasValue whether the bundle now holds a value for the key
+     */
+    protected void valueChanged(Bundle bundle, String key, boolean hasValue) {
+        modificationCount++;
+        Integer bit = localeBits.get(bundle.getLocale());
+        if (bit == null) {
+            return;
+        }
+        BitSet values = keyValues.get(key);
+        if (hasValue) {
+            if (values == null) {
+                values = new BitSet();
+                keyValues.put(key, values);
+            }
+            values.set(bit.intValue());
+        } else if (values != null) {
+            values.clear(bit.intValue());
+            if (values.isEmpty()) {
+                keyValues.remove(key);
+            }
+        }
+        updateCompleteness(key);
+    }
+
+    /**
+     * Adds the given key to incomplete keys if a bundle of this group misses
+     * a value for it, or removes it otherwise.
+     * @param key key to check
+     */
+    private void updateCompleteness(String key) {
+        BitSet values = keyValues.get(key);
+        int valueCount = values == null ? 0 : values.cardinality();
+        if (keyCounts.containsKey(key) && valueCount < bundles.size()) {
+            if (incompleteKeys.add(key)) {
+                completenessChangeCount++;
+            }
+        } else if (incompleteKeys.remove(key)) {
+            completenessChangeCount++;
+        }
+    }
+
+    /**
+     * Whether the given entry holds a value.
+     * @param entry bundle entry
+     * @return <code>true</code> if the entry value is not empty
+     */
+    /*default*/ static boolean hasValue(BundleEntry entry) {
+        String value = entry.getValue();
+        return value != null && value.length() > 0;
+    }
+
+    /**
+     * Gets the number of changes made so far to bundles and entries of this
+     * group, for telling whether anything changed since a given point.
+     * @return modification count
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets the number of times so far a key was added to or removed from
+     * this group.  Changes to values of existing keys are not counted.
+     * @return key change count
+     */
+    public int getKeyChangeCount() {
+        return keyChangeCount;
+    }
+
+    /**
+     * Gets the number of times so far a key of this group became complete
+     * or incomplete.
+     * @return completeness change count
+     */
+    public int getCompletenessChangeCount() {
+        return completenessChangeCount;
+    }
+
+    /**
+     * Is the given key found in all bundles of this group, with a value.
+     * @param key the key to check
+     * @return <code>true</code> if no bundle misses a value for the key
+     */
+    public boolean isKeyComplete(String key) {
+        return keyCounts.containsKey(key) && !incompleteKeys.contains(key);
+    }
+
+    /**
+     * Gets keys missing a value in at least one bundle of this group.
+     * @return sorted set of incomplete keys (read-only)
+     */
+    public SortedSet<String> getIncompleteKeys() {
+        return Collections.unmodifiableSortedSet(incompleteKeys);
     }
 
     /**
@@ -326,34 +513,30 @@ public class BundleGroup extends Model implements IBundleVisitable {
         return getKeys().contains(key);
     }
     
+    /**
+     * Gets the key following the given key.
+     * @param currentKey a key of this bundle group
+     * @return following key, or <code>null</code> if none (or if the given
+     *         key is not part of this bundle group)
+     */
     public String getNextKey(String currentKey) {
-        boolean returnNextKey = false;
-        for (String key : keys) {
-            if (returnNextKey)
-                return key;
-            if (key.equals(currentKey))
-                returnNextKey = true;
+        if (currentKey == null || !keys.contains(currentKey)) {
+            return null;
         }
-        return null;
-//		int index = keys.indexOf(key);
-//		if (index < keys.size()-1)
-//			return keys.get(++index);
-//		return null;
+        return keys.higher(currentKey);
     }
     
+    /**
+     * Gets the key preceding the given key.
+     * @param currentKey a key of this bundle group
+     * @return preceding key, or <code>null</code> if none (or if the given
+     *         key is not part of this bundle group)
+     */
     public String getPreviousKey(String currentKey) {
-        String previousKey = null;
-        for (String key : keys) {
-            if (key.equals(currentKey))
-                return previousKey;
-            
-            previousKey = key;
+        if (currentKey == null || !keys.contains(currentKey)) {
+            return null;
         }
-        return null;
-//		int index = keys.indexOf(key);
-//		if (index > 0)
-//			return keys.get(--index);
-//		return null;
+        return keys.lower(currentKey);
     }
 
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import org.eclipse.core.runtime.Preferences;
+
+/**
+ * Immutable snapshot of the preferences used when generating properties
+ * files.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class FormattingOptions {
+
+    /** Should "Generated by" line be added to files. */
+    public static final String SHOW_GENERATOR = "showGenerator"; //$NON-NLS-1$
+    /** Keep empty fields. */
+    public static final String KEEP_EMPTY_FIELDS = 
+            "keepEmptyFields"; //$NON-NLS-1$
+    /** Should keys be grouped. */
+    public static final String GROUP_KEYS = "groupKeys"; //$NON-NLS-1$
+    /** Key group separator. */
+    public static final String KEY_GROUP_SEPARATOR = 
+            "keyGroupSeparator"; //$NON-NLS-1$
+    /** How many level deep should keys be grouped. */
+    public static final String GROUP_LEVEL_DEEP = 
+            "groupLevelDeep"; //$NON-NLS-1$
+    /** How many line breaks between key groups. */
+    public static final String GROUP_LINE_BREAKS = 
+            "groupLineBreaks"; //$NON-NLS-1$
+    /** Should equal signs be aligned. */
+    public static final String ALIGN_EQUAL_SIGNS = 
+            "alignEqualSigns"; //$NON-NLS-1$
+    /** Should equal signs be aligned within groups. */
+    public static final String GROUP_ALIGN_EQUAL_SIGNS = 
+            "groupAlignEqualSigns"; //$NON-NLS-1$
+    /** Should spaces be put around equal signs. */
+    public static final String SPACES_AROUND_EQUAL_SIGNS = 
+            "spacesAroundEqualSigns"; //$NON-NLS-1$
+    /** Should lines be wrapped. */
+    public static final String WRAP_LINES = "wrapLines"; //$NON-NLS-1$
+    /** Maximum number of character after which we should wrap. */
+    public static final String WRAP_CHAR_LIMIT = "wrapCharLimit"; //$NON-NLS-1$
+    /** Align subsequent lines with equal signs. */
+    public static final String WRAP_ALIGN_EQUAL_SIGNS = 
+            "wrapAlignEqualSigns"; //$NON-NLS-1$
+    /** Number of spaces to indent subsequent lines. */
+    public static final String WRAP_INDENT_SPACES = 
+            "wrapIndentSpaces"; //$NON-NLS-1$
+    /** Should unicode values be converted to their encoded equivalent. */
+    public static final String CONVERT_UNICODE_TO_ENCODED = 
+            "convertUnicodeToEncoded"; //$NON-NLS-1$
+    /** Should unicode values be converted to their encoded equivalent. */
+    public static final String CONVERT_UNICODE_TO_ENCODED_UPPER = 
+            "convertUnicodeToEncodedUppercase"; //$NON-NLS-1$
+    /** Impose a given new line type. */
+    public static final String FORCE_NEW_LINE_TYPE = 
+            "forceNewLineType"; //$NON-NLS-1$
+    /** How new lines are represented in resource bundle. */
+    public static final String NEW_LINE_TYPE = "newLineType"; //$NON-NLS-1$
+    /** Should new lines character produce a line break in properties files. */
+    public static final String NEW_LINE_NICE = "newLineNice"; //$NON-NLS-1$
+    /** New Line Type: UNIX. */
+    public static final int NEW_LINE_UNIX = 0;
+    /** New Line Type: Windows. */
+    public static final int NEW_LINE_WIN = 1;
+    /** New Line Type: Mac. */
+    public static final int NEW_LINE_MAC = 2;
+
+    private final boolean showGenerator;
+    private final boolean keepEmptyFields;
+    private final boolean groupKeys;
+    private final String keyGroupSeparator;
+    private final int groupLevelDeepness;
+    private final int groupLineBreaks;
+    private final boolean alignEqualSigns;
+    private final boolean groupAlignEqualSigns;
+    private final boolean spacesAroundEqualSigns;
+    private final boolean wrapLines;
+    private final int wrapCharLimit;
+    private final boolean wrapAlignEqualSigns;
+    private final int wrapIndentSpaces;
+    private final boolean convertUnicodeToEncoded;
+    private final boolean convertUnicodeToEncodedUpper;
+    private final boolean forceNewLineType;
+    private final int newLineType;
+    private final boolean newLineNice;
+
+    /**
+     * Constructor.
+     * @param prefs preferences to take a snapshot of, holding values
+     *        for the keys of this class
+     */
+    public FormattingOptions(Preferences prefs) {
+        super();
+        showGenerator = prefs.getBoolean(SHOW_GENERATOR);
+        keepEmptyFields = prefs.getBoolean(KEEP_EMPTY_FIELDS);
+        groupKeys = prefs.getBoolean(GROUP_KEYS);
+        keyGroupSeparator = prefs.getString(KEY_GROUP_SEPARATOR);
+        groupLevelDeepness = prefs.getInt(GROUP_LEVEL_DEEP);
+        groupLineBreaks = prefs.getInt(GROUP_LINE_BREAKS);
+        alignEqualSigns = prefs.getBoolean(ALIGN_EQUAL_SIGNS);
+        groupAlignEqualSigns = prefs.getBoolean(GROUP_ALIGN_EQUAL_SIGNS);
+        spacesAroundEqualSigns = prefs.getBoolean(SPACES_AROUND_EQUAL_SIGNS);
+        wrapLines = prefs.getBoolean(WRAP_LINES);
+        wrapCharLimit = prefs.getInt(WRAP_CHAR_LIMIT);
+        wrapAlignEqualSigns = prefs.getBoolean(WRAP_ALIGN_EQUAL_SIGNS);
+        wrapIndentSpaces = prefs.getInt(WRAP_INDENT_SPACES);
+        convertUnicodeToEncoded = prefs.getBoolean(CONVERT_UNICODE_TO_ENCODED);
+        convertUnicodeToEncodedUpper = prefs.getBoolean(
+                CONVERT_UNICODE_TO_ENCODED_UPPER);
+        forceNewLineType = prefs.getBoolean(FORCE_NEW_LINE_TYPE);
+        newLineType = prefs.getInt(NEW_LINE_TYPE);
+        newLineNice = prefs.getBoolean(NEW_LINE_NICE);
+    }
+
+    /**
+     * Gets whether to print "Generated By..." comment.
+     * @return <code>true</code> if we print it
+     * @see #SHOW_GENERATOR
+     */
+    public boolean getShowGenerator() {
+        return showGenerator;
+    }
+    /**
+     * Gets whether to keep empty fields.
+     * @return <code>true</code> if empty fields are to be kept
+     * @see #KEEP_EMPTY_FIELDS
+     */
+    public boolean getKeepEmptyFields() {
+        return keepEmptyFields;
+    }
+    /**
+     * Gets whether keys should be grouped.
+     * @return <code>true</code> if keys should be grouped
+     * @see #GROUP_KEYS
+     */
+    public boolean getGroupKeys() {
+        return groupKeys;
+    }
+    /**
+     * Gets key group separator.
+     * @return key group separator
+     * @see #KEY_GROUP_SEPARATOR
+     */
+    public String getKeyGroupSeparator() {
+        return keyGroupSeparator;
+    }
+    /**
+     * Gets how many level deep keys should be grouped.
+     * @return how many level deep
+     * @see #GROUP_LEVEL_DEEP
+     */
+    public int getGroupLevelDeepness() {
+        return groupLevelDeepness;
+    }
+    /**
+     * Gets how many blank lines should separate groups.
+     * @return how many blank lines between groups
+     * @see #GROUP_LINE_BREAKS
+     */
+    public int getGroupLineBreaks() {
+        return groupLineBreaks;
+    }
+    /**
+     * Gets whether equals signs should be aligned.
+     * @return <code>true</code> if equals signs should be aligned
+     * @see #ALIGN_EQUAL_SIGNS
+     */
+    public boolean getAlignEqualSigns() {
+        return alignEqualSigns;
+    }
+    /**
+     * Gets whether equal signs should be aligned within each groups.
+     * @return <code>true</code> if equal signs should be aligned within groups
+     * @see #GROUP_ALIGN_EQUAL_SIGNS
+     */
+    public boolean getGroupAlignEqualSigns() {
+        return groupAlignEqualSigns;
+    }
+    /**
+     * Gets whether there should be spaces around equals signs.
+     * @return <code>true</code> there if should be spaces around equals signs
+     * @see #SPACES_AROUND_EQUAL_SIGNS
+     */
+    public boolean getSpacesAroundEqualSigns() {
+        return spacesAroundEqualSigns;
+    }
+    /**
+     * Gets whether lines should be wrapped if too big.
+     * @return <code>true</code> if wrapped
+     * @see #WRAP_LINES
+     */
+    public boolean getWrapLines() {
+        return wrapLines;
+    }
+    /**
+     * Gets the number of character after which lines should be wrapped.
+     * @return number of characters
+     * @see #WRAP_CHAR_LIMIT
+     */
+    public int getWrapCharLimit() {
+        return wrapCharLimit;
+    }
+    /**
+     * Gets whether wrapped lines should be aligned with equal sign.
+     * @return <code>true</code> if aligned
+     * @see #WRAP_ALIGN_EQUAL_SIGNS
+     */
+    public boolean getWrapAlignEqualSigns() {
+        return wrapAlignEqualSigns;
+    }
+    /**
+     * Gets the number of spaces to use for indentation of wrapped lines.
+     * @return number of spaces
+     * @see #WRAP_INDENT_SPACES
+     */
+    public int getWrapIndentSpaces() {
+        return wrapIndentSpaces;
+    }
+    /**
+     * Gets whether to escape unicode characters.
+     * @return <code>true</code> if escaping
+     * @see #CONVERT_UNICODE_TO_ENCODED
+     */
+    public boolean getConvertUnicodeToEncoded() {
+        return convertUnicodeToEncoded;
+    }
+    /**
+     * Gets whether escaped unicode "alpha" characters should be uppercase.
+     * @return <code>true</code> if uppercase
+     * @see #CONVERT_UNICODE_TO_ENCODED_UPPER
+     */
+    public boolean getConvertUnicodeToEncodedUpper() {
+        return convertUnicodeToEncodedUpper;
+    }
+    /**
+     * Gets whether we want to overwrite system default new line type.
+     * @return <code>true</code> if overwriting
+     * @see #FORCE_NEW_LINE_TYPE
+     */
+    public boolean getForceNewLineType() {
+        return forceNewLineType;
+    }
+    /**
+     * Gets the new line type to use when overwriting system default new
+     * line type.
+     * @return new line type
+     * @see #NEW_LINE_TYPE
+     */
+    public int getNewLineType() {
+        return newLineType;
+    }
+    /**
+     * Gets whether new lines are escaped or printed as is.
+     * @return <code>true</code> if printed as is
+     * @see #NEW_LINE_NICE
+     */
+    public boolean getNewLineNice() {
+        return newLineNice;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import org.eclipse.core.runtime.Preferences;
+
+/**
+ * Immutable snapshot of the preferences used when parsing properties
+ * files.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class ParsingOptions {
+
+    /** Should encoded values be converted to their unicode equivalent. */
+    public static final String CONVERT_ENCODED_TO_UNICODE = 
+            "convertEncodedToUnicode"; //$NON-NLS-1$
+
+    private final boolean convertEncodedToUnicode;
+
+    /**
+     * Constructor.
+     * @param prefs preferences to take a snapshot of, holding values
+     *        for the keys of this class
+     */
+    public ParsingOptions(Preferences prefs) {
+        super();
+        convertEncodedToUnicode = prefs.getBoolean(CONVERT_ENCODED_TO_UNICODE);
+    }
+
+    /**
+     * Gets whether to convert encoded strings to unicode characters.
+     * @return <code>true</code> if converting
+     * @see #CONVERT_ENCODED_TO_UNICODE
+     */
+    public boolean getConvertEncodedToUnicode() {
+        return convertEncodedToUnicode;
+    }
+}
@@ -20,7 +20,7 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+import java.util.Iterator;
 
 /**
  * Bundle-related utility methods. 
@@ -38,6 +38,10 @@ public final class PropertiesGenerator {
     private static final char[] HEX_DIGITS = {
         '0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'
     };
+    /** A table of lowercase hex digits */
+    private static final char[] LOWER_HEX_DIGITS = {
+        '0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'
+    };
 
     /** Special resouce bundle characters when persisting any text. */
     private static final String SPECIAL_VALUE_SAVE_CHARS = 
@@ -52,10 +56,10 @@ public final class PropertiesGenerator {
     /** Forced line separators. */
     private static final String[] FORCED_LINE_SEP = new String[3];
     static {
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\\\n"; //$NON-NLS-1$
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = 
-                "\\\\r\\\\n"; //$NON-NLS-1$
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\\\r"; //$NON-NLS-1$
+        FORCED_LINE_SEP[FormattingOptions.NEW_LINE_UNIX] = "\\n"; //$NON-NLS-1$
+        FORCED_LINE_SEP[FormattingOptions.NEW_LINE_WIN] = 
+                "\\r\\n"; //$NON-NLS-1$
+        FORCED_LINE_SEP[FormattingOptions.NEW_LINE_MAC] = "\\r"; //$NON-NLS-1$
     }
 
     /**
@@ -66,20 +70,37 @@ public final class PropertiesGenerator {
     }
 
     /**
-     * Generates a formatted string from a given <code>Bundle</code>.  The
-     * returned string will conform to documented properties file structure.
+     * Generates a formatted string from a given <code>Bundle</code>, using
+     * the given formatting options.
      * @param bundle the bundle used to generate the string
+     * @param options formatting options
      * @return the generated string
+     * @see #generate(Bundle, PropertiesLayout, FormattingOptions)
      */
-    public static String generate(Bundle bundle) {
+    public static String generate(Bundle bundle, FormattingOptions options) {
+        return generate(bundle, null, options);
+    }
+
+    /**
+     * Generates a formatted string from a given <code>Bundle</code>, using
+     * the given formatting options and recording where each entry is 
+     * written in the given layout.
+     * @param bundle the bundle used to generate the string
+     * @param layout layout receiving the location of each entry written,
+     *        or <code>null</code>
+     * @param options formatting options
+     * @return the generated string
+     */
+    public static String generate(
+            Bundle bundle, PropertiesLayout layout, FormattingOptions options) {
         String lineBreak = SYSTEM_LINE_SEP;
-        int numOfLineBreaks = RBEPreferences.getGroupLineBreaks();
-        StringBuffer text = new StringBuffer();
+        int numOfLineBreaks = options.getGroupLineBreaks();
+        StringBuilder text = new StringBuilder();
 
         // Header comment
         String headComment = bundle.getComment();
         if (headComment != null && headComment.length() > 0) {
-            if (RBEPreferences.getShowGenerator() 
+            if (options.getShowGenerator() 
                     && !headComment.startsWith(GENERATED_BY)) {
                 text.append(GENERATED_BY);
                 text.append(SYSTEM_LINE_SEP);
@@ -88,86 +109,139 @@ public final class PropertiesGenerator {
         }
         
         // Format
+        String[] keys = bundle.getKeys().toArray(new String[0]);
+        EqualIndexes equalIndexes = new EqualIndexes(keys, options);
+        EntryWriter writer = new EntryWriter(options);
         String group = null;
         int equalIndex = -1;
-        for (String string : bundle.getKeys()) {
+        for (String string : keys) {
             BundleEntry bundleEntry = bundle.getEntry(string);
             String key = bundleEntry.getKey();
-            String value = bundleEntry.getValue(); 
-            String comment = bundleEntry.getComment();    
             
-            if (value != null){
-                // escape backslashes
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    value = value.replaceAll(
-                            "\\\\", "\\\\\\\\");//$NON-NLS-1$ //$NON-NLS-2$
-                }
-                
-                // handle new lines in value
-                if (RBEPreferences.getForceNewLineType()) {
-                    value = value.replaceAll(
-                            "\r\n|\r|\n", FORCED_LINE_SEP[ //$NON-NLS-1$
-                                    RBEPreferences.getNewLineType()]);
-                } else {
-                    value = value.replaceAll(
-                            "\r", "\\\\r"); //$NON-NLS-1$ //$NON-NLS-2$
-                    value = value.replaceAll(
-                            "\n", "\\\\n"); //$NON-NLS-1$ //$NON-NLS-2$
-                }
-            } else {
-                value = ""; //$NON-NLS-1$
-            }
-            
-            if (RBEPreferences.getKeepEmptyFields() || value.length() > 0) {
+            if (isWritten(bundleEntry, options)) {
                 // handle group equal align and line break options
-                if (RBEPreferences.getGroupKeys()) {
-                    String newGroup = getKeyGroup(key);
+                if (options.getGroupKeys()) {
+                    String newGroup = getKeyGroup(key, options);
                     if (newGroup == null || !newGroup.equals(group)) {
                         group = newGroup;
-                        equalIndex = getEqualIndex(key, group, bundle);
+                        equalIndex = equalIndexes.get(group);
                         for (int i = 0; i < numOfLineBreaks; i++) {
                             text.append(lineBreak);
                         }
                     }
                 } else {
-                    equalIndex = getEqualIndex(key, null, bundle);
+                    equalIndex = equalIndexes.get(null);
                 }
                 
-                // Build line
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    key = PropertiesGenerator.convertUnicodeToEncoded(key);
-                    value = PropertiesGenerator.convertUnicodeToEncoded(value);
+                int entryStart = text.length();
+                writer.appendEntry(text, bundleEntry, equalIndex);
+                if (layout != null) {
+                    layout.add(key, entryStart, text.length());
                 }
-                if (comment != null && comment.length() > 0) {
-                    text.append(comment);
-                }
-                appendKey(text, key, equalIndex, bundleEntry.isCommented());
-                appendValue(text, value, equalIndex, bundleEntry.isCommented());
-                text.append(lineBreak);
             }
         }
         return text.toString();
     }
-        
+
+    /**
+     * Generates the formatted string of a single bundle entry, using the 
+     * given formatting options, the same way it is written by 
+     * {@link #generate(Bundle, PropertiesLayout, FormattingOptions)}: 
+     * comment included, but not the line breaks separating key groups.
+     * @param bundle the bundle holding the entry
+     * @param key the key of the entry to generate
+     * @param options formatting options
+     * @return the generated string, or <code>null</code> if no such entry
+     *         would be written
+     */
+    public static String generateEntry(
+            Bundle bundle, String key, FormattingOptions options) {
+        BundleEntry bundleEntry = bundle.getEntry(key);
+        if (bundleEntry == null || !isWritten(bundleEntry, options)) {
+            return null;
+        }
+        String group = null;
+        if (options.getGroupKeys()) {
+            group = getKeyGroup(key, options);
+        }
+        StringBuilder text = new StringBuilder();
+        new EntryWriter(options).appendEntry(
+                text, bundleEntry, getEqualIndex(group, bundle, options));
+        return text.toString();
+    }
+
     /**
-     * Converts unicodes to encoded &#92;uxxxx.
+     * Generates the formatted strings of several entries of a bundle, the
+     * way {@link #generateEntry(Bundle, String, FormattingOptions)} does,
+     * equal sign positions being computed once for all entries.
+     * @param bundle the bundle holding the entries
+     * @param keys the keys of the entries to generate
+     * @param options formatting options
+     * @return the generated strings, by key index, <code>null</code> for
+     *         entries which would not be written
+     */
+    public static String[] generateEntries(
+            Bundle bundle, String[] keys, FormattingOptions options) {
+        EqualIndexes equalIndexes = null;
+        if (options.getAlignEqualSigns()) {
+            equalIndexes = new EqualIndexes(
+                    bundle.getKeys().toArray(new String[0]), options);
+        }
+        EntryWriter writer = new EntryWriter(options);
+        String[] texts = new String[keys.length];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            BundleEntry bundleEntry = bundle.getEntry(keys[i]);
+            if (bundleEntry == null || !isWritten(bundleEntry, options)) {
+                continue;
+            }
+            int equalIndex = -1;
+            if (equalIndexes != null) {
+                String group = null;
+                if (options.getGroupKeys()) {
+                    group = getKeyGroup(keys[i], options);
+                }
+                equalIndex = equalIndexes.get(group);
+            }
+            text.setLength(0);
+            writer.appendEntry(text, bundleEntry, equalIndex);
+            texts[i] = text.toString();
+        }
+        return texts;
+    }
+
+    /**
+     * Checks whether a bundle entry is written when generating its bundle.
+     * @param bundleEntry a bundle entry
+     * @param options formatting options
+     * @return <code>true</code> if written
+     */
+    private static boolean isWritten(
+            BundleEntry bundleEntry, FormattingOptions options) {
+        String value = bundleEntry.getValue();
+        return options.getKeepEmptyFields() 
+                || value != null && value.length() > 0;
+    }
+
+    /**
+     * Converts unicodes to encoded &#92;uxxxx, using the given formatting
+     * options.
      * @param str string to convert
+     * @param options formatting options
      * @return converted string
      * @see java.util.Properties
      */
-    public static String convertUnicodeToEncoded(String str) {
+    public static String convertUnicodeToEncoded(
+            String str, FormattingOptions options) {
         int len = str.length();
-        StringBuffer outBuffer = new StringBuffer(len * 2);
+        StringBuilder outBuffer = new StringBuilder(len * 2);
+        char[] hexDigits = 
+                getHexDigits(options.getConvertUnicodeToEncodedUpper());
 
         for (int x = 0; x < len; x++) {
             char aChar = str.charAt(x);
             if ((aChar < 0x0020) || (aChar > 0x007e)) {
-                outBuffer.append('\\');
-                outBuffer.append('u');
-                outBuffer.append(toHex((aChar >> 12) & 0xF));
-                outBuffer.append(toHex((aChar >> 8) & 0xF));
-                outBuffer.append(toHex((aChar >> 4) & 0xF));
-                outBuffer.append(toHex(aChar & 0xF));
+                appendEncoded(outBuffer, aChar, hexDigits);
             } else {
                 outBuffer.append(aChar);
             }
@@ -176,139 +250,42 @@ public final class PropertiesGenerator {
     }
     
     /**
-     * Converts a nibble to a hex character
-     * @param nibble  the nibble to convert.
-     * @return a converted character
+     * Gets the hex digits to use when encoding characters.
+     * @param upper whether digits should be uppercase
+     * @return hex digits
      */
-    private static char toHex(int nibble) {
-        char hexChar = HEX_DIGITS[(nibble & 0xF)];
-        if (!RBEPreferences.getConvertUnicodeToEncodedUpper()) {
-            return Character.toLowerCase(hexChar);
-        }
-        return hexChar;
+    private static char[] getHexDigits(boolean upper) {
+        return upper ? HEX_DIGITS : LOWER_HEX_DIGITS;
     }
 
     /**
-     * Appends a value to resource bundle content.
-     * @param text the resource bundle content so far
-     * @param value the value to add
-     * @param equalIndex the equal sign position
-     * @param commented is the value commented
+     * Appends a character encoded as &#92;uxxxx.
+     * @param buf the buffer to append to
+     * @param aChar the character to encode
+     * @param hexDigits hex digits to use
      */
-    private static void appendValue(
-            StringBuffer text, String value, 
-            int equalIndex, boolean commented) {
-        if (value != null) {
-            // Escape potential leading spaces.
-            if (value.startsWith(" ")) { //$NON-NLS-1$
-                value = "\\" + value; //$NON-NLS-1$
-            }
-            int lineLength = RBEPreferences.getWrapCharLimit() - 1;
-            int valueStartPos = equalIndex;
-            if (RBEPreferences.getSpacesAroundEqualSigns()) {
-                valueStartPos += 3;
-            } else {
-                valueStartPos += 1;
-            }
-            
-            // Break line after escaped new line
-            if (RBEPreferences.getNewLineNice()) {
-                value = value.replaceAll(
-                        "(\\\\r\\\\n|\\\\r|\\\\n)", //$NON-NLS-1$
-                        "$1\\\\" + SYSTEM_LINE_SEP); //$NON-NLS-1$
-            }
-            // Wrap lines
-            if (RBEPreferences.getWrapLines() && valueStartPos < lineLength) {
-                StringBuffer valueBuf = new StringBuffer(value);
-                while (valueBuf.length() + valueStartPos > lineLength
-                        || valueBuf.indexOf("\n") != -1) { //$NON-NLS-1$
-                    int endPos = Math.min(
-                            valueBuf.length(), lineLength - valueStartPos);
-                    String line = valueBuf.substring(0, endPos);
-                    int breakPos = line.indexOf(SYSTEM_LINE_SEP);
-                    if (breakPos != -1) {
-                        endPos = breakPos + SYSTEM_LINE_SEP.length();
-                        saveValue(text, valueBuf.substring(0, endPos));
-                        //text.append(valueBuf.substring(0, endPos));
-                    } else {
-                        breakPos = line.lastIndexOf(' ');
-                        if (breakPos != -1) {
-                            endPos = breakPos + 1;
-                            saveValue(text, valueBuf.substring(0, endPos));
-                            //text.append(valueBuf.substring(0, endPos));
-                            text.append("\\"); //$NON-NLS-1$
-                            text.append(SYSTEM_LINE_SEP);
-                        }
-                    }
-                    valueBuf.delete(0, endPos);
-                    // Figure out starting position for next line
-                    if (!RBEPreferences.getWrapAlignEqualSigns()) {
-                        valueStartPos = RBEPreferences.getWrapIndentSpaces();
-                    }
-
-                    if (commented && valueStartPos > 0) {
-                        text.append("##"); //$NON-NLS-1$
-                    }
-
-                    for (int i = 0; i < valueStartPos; i++) {
-                        text.append(' ');
-                    }
-                }
-                text.append(valueBuf);
-            } else {
-                saveValue(text, value);
-                //text.append(value);
-            }
-        }
+    private static void appendEncoded(
+            StringBuilder buf, char aChar, char[] hexDigits) {
+        buf.append('\\');
+        buf.append('u');
+        buf.append(hexDigits[(aChar >> 12) & 0xF]);
+        buf.append(hexDigits[(aChar >> 8) & 0xF]);
+        buf.append(hexDigits[(aChar >> 4) & 0xF]);
+        buf.append(hexDigits[aChar & 0xF]);
     }
 
-    /**
-     * Appends a key to resource bundle content.
-     * @param text the resource bundle content so far
-     * @param key the key to add
-     * @param equalIndex the equal sign position
-     * @param commented is the key commented out
-     */
-    private static void appendKey(
-            StringBuffer text, String key, int equalIndex, boolean commented) {
-
-        if (commented) {
-            text.append("##"); //$NON-NLS-1$
-        }
-        
-        // Escape and persist the rest
-        saveKey(text, key);
-//        text.append(key);
-        for (int i = 0; i < equalIndex - key.length(); i++) {
-            text.append(' ');
-        }
-        if (RBEPreferences.getSpacesAroundEqualSigns()) {
-            text.append(" = "); //$NON-NLS-1$
-        } else {
-            text.append("="); //$NON-NLS-1$
-        }
-    }
-    
-    
-    private static void saveKey(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_KEY_SAVE_CHARS);
-    }
-    private static void saveValue(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_VALUE_SAVE_CHARS);
-    }
-    
     /**
      * Saves some text in a given buffer after converting special characters.
      * @param buf the buffer to store the text into
-     * @param str the value to save
-     * @param escapeChars characters to escape
+     * @param str the text holding the value to save
+     * @param start start of value to save
+     * @param end end of value to save (exclusive)
      */
-    private static void saveText(
-            StringBuffer buf, String str, String escapeChars) {
-        int len = str.length();
-        for(int x = 0; x < len; x++) {
+    private static void saveValue(
+            StringBuilder buf, CharSequence str, int start, int end) {
+        for (int x = start; x < end; x++) {
             char aChar = str.charAt(x);
-            if (escapeChars.indexOf(aChar) != -1) {
+            if (SPECIAL_VALUE_SAVE_CHARS.indexOf(aChar) != -1) {
                 buf.append('\\');
             }
             buf.append(aChar);
@@ -318,11 +295,12 @@ public final class PropertiesGenerator {
     /**
      * Gets the group from a resource bundle key.
      * @param key the key to get a group from
+     * @param options formatting options
      * @return key group
      */
-    private static String getKeyGroup(String key) {
-        String sep = RBEPreferences.getKeyGroupSeparator();
-        int deepness = RBEPreferences.getGroupLevelDeepness();
+    private static String getKeyGroup(String key, FormattingOptions options) {
+        String sep = options.getKeyGroupSeparator();
+        int deepness = options.getGroupLevelDeepness();
         int endIndex = 0;
         int levelFound = 0;
         
@@ -345,26 +323,25 @@ public final class PropertiesGenerator {
     /**
      * Gets the position where the equal sign should be located for
      * the given group.
-     * @param key resource bundle key
      * @param group resource bundle key group
      * @param bundle resource bundle
+     * @param options formatting options
      * @return position
      */
-    private static int getEqualIndex(String key, String group, Bundle bundle) {
+    private static int getEqualIndex(
+            String group, Bundle bundle, FormattingOptions options) {
         int equalIndex = -1;
-        boolean alignEquals = RBEPreferences.getAlignEqualSigns();
-        boolean groupKeys = RBEPreferences.getGroupKeys();
-        boolean groupAlignEquals = RBEPreferences.getGroupAlignEqualSigns();
+        boolean groupKeys = options.getGroupKeys();
 
         // Exit now if we are not aligning equals
-        if (!alignEquals || groupKeys && !groupAlignEquals 
-                         || groupKeys && group == null) {
+        if (!isEqualAligned(group, options)) {
             return -1;
         }
         
         // Get equal index
-        for (String iterKey : bundle.getKeys()) {
-            if (!groupKeys || groupAlignEquals && iterKey.startsWith(group)) {
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            String iterKey = iter.next().getKey();
+            if (!groupKeys || iterKey.startsWith(group)) {
                 int index = iterKey.length();
                 if (index > equalIndex) {
                     equalIndex = index;
@@ -373,4 +350,359 @@ public final class PropertiesGenerator {
         }        
         return equalIndex;
     }
+
+    /**
+     * Checks whether equal signs are aligned for the given group.
+     * @param group resource bundle key group
+     * @param options formatting options
+     * @return <code>true</code> if equal signs are aligned
+     */
+    private static boolean isEqualAligned(
+            String group, FormattingOptions options) {
+        if (!options.getAlignEqualSigns()) {
+            return false;
+        }
+        return !options.getGroupKeys() 
+                || options.getGroupAlignEqualSigns() && group != null;
+    }
+
+    /**
+     * Writes bundle entries, escaping keys and values in a single pass
+     * per entry, through buffers reused from one entry to the next.
+     */
+    private static final class EntryWriter {
+        /** Formatting options. */
+        private final FormattingOptions options;
+        /** Hex digits used when encoding characters. */
+        private final char[] hexDigits;
+        /** Escaped value of entry being written. */
+        private final StringBuilder value = new StringBuilder();
+        /** Value being wrapped, with line breaks after new lines. */
+        private final StringBuilder wrappedValue = new StringBuilder();
+
+        /**
+         * Constructor.
+         * @param options formatting options
+         */
+        EntryWriter(FormattingOptions options) {
+            super();
+            this.options = options;
+            this.hexDigits = 
+                    getHexDigits(options.getConvertUnicodeToEncodedUpper());
+        }
+
+        /**
+         * Appends a bundle entry (comment, key and value) to resource 
+         * bundle content.
+         * @param text the resource bundle content so far
+         * @param bundleEntry the entry to add
+         * @param equalIndex the equal sign position
+         */
+        void appendEntry(
+                StringBuilder text, BundleEntry bundleEntry, int equalIndex) {
+            String comment = bundleEntry.getComment();
+            if (comment != null && comment.length() > 0) {
+                text.append(comment);
+            }
+            escapeValue(bundleEntry.getValue());
+            appendKey(text, bundleEntry.getKey(), 
+                    equalIndex, bundleEntry.isCommented());
+            appendValue(text, equalIndex, bundleEntry.isCommented());
+            text.append(SYSTEM_LINE_SEP);
+        }
+
+        /**
+         * Escapes backslashes, new lines, unicode characters and leading
+         * spaces found in a value, into the value buffer.
+         * @param rawValue the value to escape (may be <code>null</code>)
+         */
+        private void escapeValue(String rawValue) {
+            value.setLength(0);
+            if (rawValue == null) {
+                return;
+            }
+            boolean encode = options.getConvertUnicodeToEncoded();
+            int len = rawValue.length();
+            if (len > 0 && rawValue.charAt(0) == ' ') {
+                value.append('\\');
+            }
+            for (int x = 0; x < len; x++) {
+                char aChar = rawValue.charAt(x);
+                if (aChar == '\\' && encode) {
+                    value.append("\\\\"); //$NON-NLS-1$
+                } else if (aChar == '\r' || aChar == '\n') {
+                    if (options.getForceNewLineType()) {
+                        if (aChar == '\r' && x + 1 < len 
+                                && rawValue.charAt(x + 1) == '\n') {
+                            x++;
+                        }
+                        value.append(
+                                FORCED_LINE_SEP[options.getNewLineType()]);
+                    } else if (aChar == '\r') {
+                        value.append("\\r"); //$NON-NLS-1$
+                    } else {
+                        value.append("\\n"); //$NON-NLS-1$
+                    }
+                } else if (encode && ((aChar < 0x0020) || (aChar > 0x007e))) {
+                    appendEncoded(value, aChar, hexDigits);
+                } else {
+                    value.append(aChar);
+                }
+            }
+        }
+
+        /**
+         * Appends a key to resource bundle content.
+         * @param text the resource bundle content so far
+         * @param key the key to add
+         * @param equalIndex the equal sign position
+         * @param commented is the key commented out
+         */
+        private void appendKey(StringBuilder text, 
+                String key, int equalIndex, boolean commented) {
+            if (commented) {
+                text.append("##"); //$NON-NLS-1$
+            }
+            
+            // Encode, escape and persist
+            boolean encode = options.getConvertUnicodeToEncoded();
+            int len = key.length();
+            int keyLength = len;
+            for (int x = 0; x < len; x++) {
+                char aChar = key.charAt(x);
+                if (encode && ((aChar < 0x0020) || (aChar > 0x007e))) {
+                    appendEncoded(text, aChar, hexDigits);
+                    keyLength += 5;
+                } else {
+                    if (SPECIAL_KEY_SAVE_CHARS.indexOf(aChar) != -1) {
+                        text.append('\\');
+                    }
+                    text.append(aChar);
+                }
+            }
+            for (int i = 0; i < equalIndex - keyLength; i++) {
+                text.append(' ');
+            }
+            if (options.getSpacesAroundEqualSigns()) {
+                text.append(" = "); //$NON-NLS-1$
+            } else {
+                text.append("="); //$NON-NLS-1$
+            }
+        }
+
+        /**
+         * Appends the escaped value to resource bundle content.
+         * @param text the resource bundle content so far
+         * @param equalIndex the equal sign position
+         * @param commented is the value commented
+         */
+        private void appendValue(
+                StringBuilder text, int equalIndex, boolean commented) {
+            int lineLength = options.getWrapCharLimit() - 1;
+            int valueStartPos = equalIndex;
+            if (options.getSpacesAroundEqualSigns()) {
+                valueStartPos += 3;
+            } else {
+                valueStartPos += 1;
+            }
+            
+            if (!options.getWrapLines() || valueStartPos >= lineLength) {
+                appendNewLinesNicely(text, value, true);
+                return;
+            }
+            
+            // Wrap lines
+            wrappedValue.setLength(0);
+            appendNewLinesNicely(wrappedValue, value, false);
+            StringBuilder valueBuf = wrappedValue;
+            int length = valueBuf.length();
+            int pos = 0;
+            int nextNewLine = valueBuf.indexOf("\n"); //$NON-NLS-1$
+            int nextLineSep = valueBuf.indexOf(SYSTEM_LINE_SEP);
+            while (length - pos + valueStartPos > lineLength
+                    || nextNewLine != -1) {
+                int endPos = Math.min(
+                        length - pos, lineLength - valueStartPos);
+                int lineEnd = pos + endPos;
+                if (nextLineSep != -1 && nextLineSep 
+                        + SYSTEM_LINE_SEP.length() <= lineEnd) {
+                    endPos = nextLineSep - pos + SYSTEM_LINE_SEP.length();
+                    saveValue(text, valueBuf, pos, pos + endPos);
+                } else {
+                    int breakPos = lineEnd - 1;
+                    while (breakPos >= pos && valueBuf.charAt(breakPos) != ' ') {
+                        breakPos--;
+                    }
+                    if (breakPos >= pos) {
+                        endPos = breakPos - pos + 1;
+                        saveValue(text, valueBuf, pos, pos + endPos);
+                        text.append("\\"); //$NON-NLS-1$
+                        text.append(SYSTEM_LINE_SEP);
+                    }
+                }
+                pos += endPos;
+                if (nextNewLine != -1 && nextNewLine < pos) {
+                    nextNewLine = valueBuf.indexOf("\n", pos); //$NON-NLS-1$
+                }
+                if (nextLineSep != -1 && nextLineSep < pos) {
+                    nextLineSep = valueBuf.indexOf(SYSTEM_LINE_SEP, pos);
+                }
+                // Figure out starting position for next line
+                if (!options.getWrapAlignEqualSigns()) {
+                    valueStartPos = options.getWrapIndentSpaces();
+                }
+
+                if (commented && valueStartPos > 0) {
+                    text.append("##"); //$NON-NLS-1$
+                }
+
+                for (int i = 0; i < valueStartPos; i++) {
+                    text.append(' ');
+                }
+            }
+            text.append(valueBuf, pos, length);
+        }
+
+        /**
+         * Appends an escaped value, breaking lines after escaped new lines
+         * if new lines are to be printed nicely.
+         * @param buf the buffer to append to
+         * @param escapedValue escaped value
+         * @param save whether to escape special characters as well
+         */
+        private void appendNewLinesNicely(
+                StringBuilder buf, CharSequence escapedValue, boolean save) {
+            boolean nice = options.getNewLineNice();
+            int len = escapedValue.length();
+            int x = 0;
+            while (x < len) {
+                char aChar = escapedValue.charAt(x);
+                if (nice && aChar == '\\' && x + 1 < len) {
+                    char next = escapedValue.charAt(x + 1);
+                    if (next == 'r' || next == 'n') {
+                        int end = x + 2;
+                        if (next == 'r' && x + 3 < len 
+                                && escapedValue.charAt(x + 2) == '\\'
+                                && escapedValue.charAt(x + 3) == 'n') {
+                            end = x + 4;
+                        }
+                        buf.append(escapedValue, x, end);
+                        buf.append('\\');
+                        buf.append(SYSTEM_LINE_SEP);
+                        x = end;
+                        continue;
+                    }
+                }
+                if (save && SPECIAL_VALUE_SAVE_CHARS.indexOf(aChar) != -1) {
+                    buf.append('\\');
+                }
+                buf.append(aChar);
+                x++;
+            }
+        }
+    }
+
+    /**
+     * Positions where equal signs should be located, computed once for all
+     * keys of a bundle being generated.  Once sorted, keys of a group 
+     * (i.e. keys starting with the group) are contiguous: the position for
+     * a group is the longest key length found in a range of keys, obtained
+     * in constant time from precomputed range maximums.
+     */
+    private static final class EqualIndexes {
+        /** Sorted keys. */
+        private final String[] keys;
+        /** Formatting options. */
+        private final FormattingOptions options;
+        /** Longest key length among the 2^level keys starting at each
+         *  index (by level), or <code>null</code> if not aligning groups. */
+        private final int[][] maxLengths;
+        /** Longest key length of all, or -1 if not aligning equals. */
+        private final int maxLength;
+
+        /**
+         * Constructor.
+         * @param keys sorted keys
+         * @param options formatting options
+         */
+        EqualIndexes(String[] keys, FormattingOptions options) {
+            super();
+            this.keys = keys;
+            this.options = options;
+            int longest = -1;
+            if (options.getAlignEqualSigns()) {
+                for (int i = 0; i < keys.length; i++) {
+                    longest = Math.max(longest, keys[i].length());
+                }
+            }
+            maxLength = longest;
+            if (longest != -1 && options.getGroupKeys()
+                    && options.getGroupAlignEqualSigns()) {
+                int levels = 1;
+                while ((1 << levels) <= keys.length) {
+                    levels++;
+                }
+                maxLengths = new int[levels][];
+                maxLengths[0] = new int[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    maxLengths[0][i] = keys[i].length();
+                }
+                for (int level = 1; level < levels; level++) {
+                    int[] previous = maxLengths[level - 1];
+                    int[] current = new int[keys.length - (1 << level) + 1];
+                    int half = 1 << (level - 1);
+                    for (int i = 0; i < current.length; i++) {
+                        current[i] = Math.max(previous[i], previous[i + half]);
+                    }
+                    maxLengths[level] = current;
+                }
+            } else {
+                maxLengths = null;
+            }
+        }
+
+        /**
+         * Gets the position where the equal sign should be located for
+         * the given group.
+         * @param group resource bundle key group
+         * @return position
+         */
+        int get(String group) {
+            if (!isEqualAligned(group, options)) {
+                return -1;
+            }
+            if (!options.getGroupKeys()) {
+                return maxLength;
+            }
+            // first key not lower than group
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(group) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int from = low;
+            // first key following group keys
+            high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].startsWith(group)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int to = low;
+            if (from == to) {
+                return -1;
+            }
+            int level = 31 - Integer.numberOfLeadingZeros(to - from);
+            return Math.max(maxLengths[level][from], 
+                    maxLengths[level][to - (1 << level)]);
+        }
+    }
 }
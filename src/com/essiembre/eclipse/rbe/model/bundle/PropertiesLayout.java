@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+/**
+ * Location of each entry found in a properties document, in document order.
+ * An entry starts at the beginning of its key line and ends right after
+ * the line terminator of its last line (or at the end of the document).
+ * Entries with a blank key are part of the layout, even if they are not
+ * part of the parsed bundle.  Layouts recorded while generating a document
+ * instead start each entry with its comment, and are sorted by key.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class PropertiesLayout {
+
+    /** Initial capacity. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Entry keys. */
+    private String[] keys = new String[INITIAL_CAPACITY];
+    /** Entry start offsets. */
+    private int[] starts = new int[INITIAL_CAPACITY];
+    /** Entry end offsets. */
+    private int[] ends = new int[INITIAL_CAPACITY];
+    /** Number of entries. */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public PropertiesLayout() {
+        super();
+    }
+
+    /**
+     * Gets the number of entries in this layout.
+     * @return number of entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the key of the entry at the given index.
+     * @param index entry index
+     * @return entry key
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets the offset where the entry at the given index starts.
+     * @param index entry index
+     * @return start offset
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Gets the offset where the entry at the given index ends.
+     * @param index entry index
+     * @return end offset (exclusive)
+     */
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Gets the index of the last entry ending before the given offset.
+     * @param offset document offset
+     * @return entry index, or -1 if none
+     */
+    public int getLastIndexEndingBefore(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Gets the index of the entry matching the given key, in a layout
+     * sorted by key (such as a generated one).
+     * @param key entry key
+     * @return entry index, or a negative value if not found
+     */
+    public int getSortedIndex(String key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = keys[mid].compareTo(key);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Changes the length of the entries at the given indexes, shifting the
+     * offsets of the entries following each of them in a single pass.
+     * @param indexes entry indexes, in increasing order
+     * @param lengths new entry lengths, by index position
+     * @param count number of entries to change
+     */
+    public void setLengths(int[] indexes, int[] lengths, int count) {
+        if (count == 0) {
+            return;
+        }
+        int shift = 0;
+        int next = 0;
+        for (int i = indexes[0]; i < size; i++) {
+            starts[i] += shift;
+            if (next < count && indexes[next] == i) {
+                // new end, relative to the end shifted so far
+                shift = starts[i] + lengths[next] - ends[i];
+                next++;
+            }
+            ends[i] += shift;
+        }
+    }
+
+    /**
+     * Replaces the entries from <code>fromIndex</code> (inclusive) to
+     * <code>toIndex</code> (exclusive) with the entries of the given layout,
+     * then shifts the offsets of the entries following them.
+     * @param fromIndex index of first entry to replace
+     * @param toIndex index after the last entry to replace
+     * @param region layout holding the replacement entries, with offsets
+     *        already relative to this layout document
+     * @param shift number of characters added (or removed, if negative)
+     *        before the entries following the replaced ones
+     */
+    public void replace(
+            int fromIndex, int toIndex, PropertiesLayout region, int shift) {
+        int regionSize = region.size;
+        int tail = size - toIndex;
+        int newSize = fromIndex + regionSize + tail;
+        ensureCapacity(newSize);
+        int tailIndex = fromIndex + regionSize;
+        System.arraycopy(keys, toIndex, keys, tailIndex, tail);
+        System.arraycopy(starts, toIndex, starts, tailIndex, tail);
+        System.arraycopy(ends, toIndex, ends, tailIndex, tail);
+        System.arraycopy(region.keys, 0, keys, fromIndex, regionSize);
+        System.arraycopy(region.starts, 0, starts, fromIndex, regionSize);
+        System.arraycopy(region.ends, 0, ends, fromIndex, regionSize);
+        if (shift != 0) {
+            for (int i = tailIndex; i < newSize; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+        for (int i = newSize; i < size; i++) {
+            keys[i] = null;
+        }
+        size = newSize;
+    }
+
+    /**
+     * Adds an entry at the end of this layout.
+     * @param key entry key
+     * @param start entry start offset
+     * @param end entry end offset
+     */
+    protected void add(String key, int start, int end) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Makes sure this layout can hold the given number of entries.
+     * @param capacity minimum capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newCapacity = Math.max(capacity, keys.length * 2);
+            String[] newKeys = new String[newCapacity];
+            int[] newStarts = new int[newCapacity];
+            int[] newEnds = new int[newCapacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(starts, 0, newStarts, 0, size);
+            System.arraycopy(ends, 0, newEnds, 0, size);
+            keys = newKeys;
+            starts = newStarts;
+            ends = newEnds;
+        }
+    }
+}
@@ -20,10 +20,8 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
-import java.util.regex.Pattern;
-
-import com.essiembre.eclipse.rbe.RBEPlugin;
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+import java.io.IOException;
+import java.io.Reader;
 
 /**
  * Bundle-related utility methods. 
@@ -38,14 +36,6 @@ public final class PropertiesParser {
     
     /** Characters accepted as key value separators. */
     private static final String KEY_VALUE_SEPARATORS = "=:"; //$NON-NLS-1$
-    
-    private static final Pattern PATTERN_LINE_BREAK = Pattern.compile("\r\n|\r|\n"); //$NON-NLS-1$
-    private static final Pattern PATTERN_IS_REGULAR_LINE = Pattern.compile("^[^#!].*"); //$NON-NLS-1$
-    private static final Pattern PATTERN_IS_COMMENTED_LINE = Pattern.compile("^##[^#].*"); //$NON-NLS-1$
-    private static final Pattern PATTERN_LEADING_SPACE = Pattern.compile("^\\s*"); //$NON-NLS-1$
-    private static final Pattern PATTERN_COMMENT_START = Pattern.compile("^##"); //$NON-NLS-1$
-    private static final Pattern PATTERN_BACKSLASH_R = Pattern.compile("\\\\r"); //$NON-NLS-1$
-    private static final Pattern PATTERN_BACKSLASH_N = Pattern.compile("\\\\n"); //$NON-NLS-1$
 
     
     /**
@@ -56,30 +46,106 @@ public final class PropertiesParser {
     }
 
     /**
-     * Parses a string and converts it to a <code>Bundle</code>.  The string is 
-     * expected to match the documented structure of a properties file.
-     * The returned bundle will have no <code>Locale</code> and no
-     * <code>BundleGroup</code> associated to it.
-     * @param properties the string containing the properties to parse
+     * Parses a character sequence and converts it to a <code>Bundle</code>,
+     * using the given parsing options.  The content is expected to match 
+     * the documented structure of a properties file, and is read in a 
+     * single forward pass.  The returned bundle will have no 
+     * <code>Locale</code> and no <code>BundleGroup</code> associated to it.
+     * @param properties the characters containing the properties to parse
+     * @param options parsing options
+     * @return a new bundle
+     */
+    public static Bundle parse(
+            CharSequence properties, ParsingOptions options) {
+        return parse(properties, 0, properties.length(), null, options);
+    }
+
+    /**
+     * Parses properties read from the given reader and converts them to a
+     * <code>Bundle</code>, using the given parsing options.
+     * @param reader the reader providing the properties to parse
+     * @param options parsing options
+     * @return a new bundle
+     * @throws IOException problem reading properties
+     * @see #parse(CharSequence, ParsingOptions)
+     */
+    public static Bundle parse(Reader reader, ParsingOptions options)
+            throws IOException {
+        return parse(
+                new LineScanner(reader), Integer.MAX_VALUE, null, options);
+    }
+
+    /**
+     * Parses a character sequence and converts it to a <code>Bundle</code>,
+     * using the given parsing options and recording where each entry is 
+     * found in the given layout.
+     * @param properties the characters containing the properties to parse
+     * @param layout layout receiving the location of each entry
+     * @param options parsing options
      * @return a new bundle
+     * @see #parse(CharSequence, ParsingOptions)
      */
-    public static Bundle parse(String properties) {
+    public static Bundle parse(CharSequence properties, 
+            PropertiesLayout layout, ParsingOptions options) {
+        return parse(properties, 0, properties.length(), layout, options);
+    }
+
+    /**
+     * Parses the entries found in a region of a character sequence, using
+     * the given parsing options and recording where each entry is found in
+     * the given layout.  The region must start where a previous entry 
+     * ended (or at the beginning of the content).  The returned bundle 
+     * only holds entries from that region (and the file comment, when 
+     * starting at the beginning of the content).  Content following the 
+     * region is parsed the same way as before only if the region ends 
+     * right after an entry, or at the end of the content: when that is 
+     * not the case, <code>null</code> is returned.
+     * @param properties the characters containing the properties to parse
+     * @param start region start offset
+     * @param end region end offset
+     * @param layout layout receiving the location of each entry, 
+     *        or <code>null</code>
+     * @param options parsing options
+     * @return a new bundle, or <code>null</code>
+     */
+    public static Bundle parse(CharSequence properties, int start, int end, 
+            PropertiesLayout layout, ParsingOptions options) {
+        try {
+            return parse(new LineScanner(properties, start), 
+                    end, layout, options);
+        } catch (IOException e) {
+            // never thrown when reading from a character sequence
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses lines returned by the given scanner, up to the given offset.
+     * @param scanner line scanner
+     * @param end offset where to stop parsing
+     * @param layout layout receiving entry locations, or <code>null</code>
+     * @param options parsing options
+     * @return a new bundle, or <code>null</code> if the given offset does
+     *         not end an entry
+     * @throws IOException problem reading lines
+     */
+    private static Bundle parse(LineScanner scanner, int end, 
+            PropertiesLayout layout, ParsingOptions options)
+            throws IOException {
         Bundle bundle = new Bundle();
-        String[] lines = PATTERN_LINE_BREAK.split(properties);
+        boolean convertEncoded = options.getConvertEncodedToUnicode();
         
-        boolean doneWithFileComment = false;
-        StringBuffer fileComment = new StringBuffer();
-        StringBuffer lineComment = new StringBuffer();
-        StringBuffer lineBuf = new StringBuffer();
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            lineBuf.setLength(0);
-            lineBuf.append(line);
-        
-            int equalPosition = findKeyValueSeparator(line);
-            boolean isRegularLine = PATTERN_IS_REGULAR_LINE.matcher(line).matches();
+        boolean doneWithFileComment = scanner.getOffset() > 0;
+        StringBuilder fileComment = new StringBuilder();
+        StringBuilder lineComment = new StringBuilder();
+        StringBuilder lineBuf = new StringBuilder();
+        StringBuilder wrappedBuf = new StringBuilder();
+        int lineStart = scanner.getOffset();
+        while (lineStart < end && scanner.nextLine(lineBuf)) {
+            int equalPosition = findKeyValueSeparator(lineBuf);
+            boolean isRegularLine = isRegularLine(lineBuf);
             boolean isCommentedLine = doneWithFileComment 
-                    && PATTERN_IS_COMMENTED_LINE.matcher(line).matches();
+                    && isCommentedLine(lineBuf);
             
             // parse regular and commented lines
             if (equalPosition >= 1 && (isRegularLine || isCommentedLine)) {
@@ -94,44 +160,47 @@ public final class PropertiesParser {
                     lineBuf.delete(0, 2); // remove ##
                     equalPosition -= 2;
                 }
-                String backslash = "\\"; //$NON-NLS-1$
-                while (lineBuf.lastIndexOf(backslash) == lineBuf.length() -1) {
-                    int lineBreakPosition = lineBuf.lastIndexOf(backslash);
-                    lineBuf.replace(
-                            lineBreakPosition,
-                            lineBreakPosition + 1, ""); //$NON-NLS-1$
-                    if (++i < lines.length) {
-                        String wrappedLine = PATTERN_LEADING_SPACE.matcher( lines[i] ).replaceFirst(""); //$NON-NLS-1$
-//                        String wrappedLine = lines[i].trim();
-                        if (isCommentedLine) {
-                            lineBuf.append(PATTERN_COMMENT_START.matcher(wrappedLine).replaceFirst("")); //$NON-NLS-1$
-                        } else {
-                            lineBuf.append(wrappedLine);
+                while (lineBuf.length() > 0 
+                        && lineBuf.charAt(lineBuf.length() - 1) == '\\') {
+                    lineBuf.setLength(lineBuf.length() - 1);
+                    if (scanner.nextLine(wrappedBuf)) {
+                        int wrappedStart = skipLeadingSpaces(wrappedBuf, 0);
+                        if (isCommentedLine 
+                                && startsWithCommentMarker(
+                                        wrappedBuf, wrappedStart)) {
+                            wrappedStart += 2;
                         }
+                        lineBuf.append(
+                                wrappedBuf, wrappedStart, wrappedBuf.length());
                     }
                 }
-                String key = lineBuf.substring(0, equalPosition).trim();
-                key = unescapeKey(key);
+                String key = unescapeKey(lineBuf, equalPosition);
                 
-                String value = PATTERN_LEADING_SPACE.matcher( lineBuf.substring(equalPosition + 1) )
-                      .replaceFirst(""); //$NON-NLS-1$
-//                String value = lineBuf.substring(equalPosition + 1).trim();
+                int valueStart = 
+                        skipLeadingSpaces(lineBuf, equalPosition + 1);
                 // Unescape leading spaces
-                if (value.startsWith("\\ ")) { //$NON-NLS-1$
-                    value = value.substring(1);
+                if (valueStart + 1 < lineBuf.length()
+                        && lineBuf.charAt(valueStart) == '\\'
+                        && lineBuf.charAt(valueStart + 1) == ' ') {
+                    valueStart++;
                 }
                 
-                if (RBEPreferences.getConvertEncodedToUnicode()) {
+                String value;
+                if (convertEncoded) {
                     key = PropertiesParser.convertEncodedToUnicode(key);
-                    value = PropertiesParser.convertEncodedToUnicode(value);
+                    value = PropertiesParser.convertEncodedToUnicode(
+                            lineBuf.substring(valueStart));
                 } else {
-                    value = PATTERN_BACKSLASH_R.matcher(value).replaceAll("\r"); //$NON-NLS-1$
-                    value = PATTERN_BACKSLASH_N.matcher(value).replaceAll("\n"); //$NON-NLS-1$
+                    value = unescapeLineBreaks(lineBuf, valueStart);
                 }
                 bundle.addEntry(
                         new BundleEntry(key, value, comment, isCommentedLine));
+                if (layout != null) {
+                    layout.add(key, lineStart, scanner.getOffset());
+                }
             // parse comment line
-            } else if (lineBuf.length()>0 && (lineBuf.charAt(0) == '#' || lineBuf.charAt(0) == '!')) {
+            } else if (lineBuf.length() > 0 && (lineBuf.charAt(0) == '#' 
+                    || lineBuf.charAt(0) == '!')) {
                if (!doneWithFileComment) {
                     fileComment.append(lineBuf);
                     fileComment.append(SYSTEM_LINE_SEPARATOR);
@@ -143,6 +212,11 @@ public final class PropertiesParser {
             } else {
                 doneWithFileComment = true;
             }
+            lineStart = scanner.getOffset();
+        }
+        if (lineStart > end || !scanner.isAtEnd()
+                && (lineComment.length() > 0 || !doneWithFileComment)) {
+            return null;
         }
         bundle.setComment(fileComment.toString());
         
@@ -186,8 +260,9 @@ public final class PropertiesParser {
                             break;
                         default:
                             value = aChar;
-                            System.err.println(RBEPlugin.getString(
-                                 "error.init.badencoding") + str); //$NON-NLS-1$
+                            System.err.println(
+                                    "Malformed \\uxxxx encoding " //$NON-NLS-1$
+                                  + "found in this string: " + str); //$NON-NLS-1$
                         }
                     }
                     outBuffer.append((char) value);
@@ -217,7 +292,7 @@ public final class PropertiesParser {
      * @param str the string on which to find seperator
      * @return the separator index or -1 if no separator was found
      */
-    private static int findKeyValueSeparator(String str) {
+    private static int findKeyValueSeparator(CharSequence str) {
         int index = -1;
         int length = str.length();
         for (int i = 0; i < length; i++) {
@@ -232,15 +307,258 @@ public final class PropertiesParser {
         return index;
     }
     
-    private static String unescapeKey(String key) {
-        int length = key.length();
-        StringBuffer buf = new StringBuffer();
-        for (int index = 0; index < length; index++) {
-            char currentChar = key.charAt(index);
+    /**
+     * Extracts the key found before the separator, trimmed and stripped of
+     * its escape characters.
+     * @param line the line holding the key
+     * @param separatorPosition the key/value separator index
+     * @return the unescaped key
+     */
+    private static String unescapeKey(CharSequence line, int separatorPosition) {
+        int start = 0;
+        int end = separatorPosition;
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        StringBuilder buf = new StringBuilder(end - start);
+        for (int index = start; index < end; index++) {
+            char currentChar = line.charAt(index);
             if (currentChar != '\\') {
                 buf.append(currentChar);
             }
         }
         return buf.toString();
     }
+
+    /**
+     * Converts escaped &#92;r and &#92;n sequences found from the given
+     * position to their carriage return and line feed characters.
+     * @param line the line holding the value
+     * @param start the value start index
+     * @return the unescaped value
+     */
+    private static String unescapeLineBreaks(CharSequence line, int start) {
+        int length = line.length();
+        StringBuilder buf = new StringBuilder(length - start);
+        for (int index = start; index < length; index++) {
+            char currentChar = line.charAt(index);
+            if (currentChar == '\\' && index + 1 < length) {
+                char nextChar = line.charAt(index + 1);
+                if (nextChar == 'r') {
+                    buf.append('\r');
+                    index++;
+                    continue;
+                } else if (nextChar == 'n') {
+                    buf.append('\n');
+                    index++;
+                    continue;
+                }
+            }
+            buf.append(currentChar);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Gets the index of the first non-whitespace character found from the
+     * given position.
+     * @param line the line to scan
+     * @param start where to start scanning
+     * @return index of first non-whitespace character, or the line length
+     */
+    private static int skipLeadingSpaces(CharSequence line, int start) {
+        int length = line.length();
+        int index = start;
+        while (index < length && isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Whether the given character is a white space, as defined by regular
+     * expressions (<code>\\s</code>).
+     * @param c the character to test
+     * @return <code>true</code> if a white space
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' 
+                || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Whether the line holds a key/value pair (i.e., not a comment).
+     * @param line the line to test
+     * @return <code>true</code> if a regular line
+     */
+    private static boolean isRegularLine(CharSequence line) {
+        return line.length() > 0
+                && line.charAt(0) != '#' && line.charAt(0) != '!'
+                && !hasLineTerminator(line, 1);
+    }
+
+    /**
+     * Whether the line holds a commented out key/value pair 
+     * (i.e., starting with exactly two '#').
+     * @param line the line to test
+     * @return <code>true</code> if a commented line
+     */
+    private static boolean isCommentedLine(CharSequence line) {
+        return line.length() > 2
+                && startsWithCommentMarker(line, 0)
+                && line.charAt(2) != '#'
+                && !hasLineTerminator(line, 3);
+    }
+
+    /**
+     * Whether the given position starts with the "##" comment marker.
+     * @param line the line to test
+     * @param start position of the marker
+     * @return <code>true</code> if the marker is found
+     */
+    private static boolean startsWithCommentMarker(
+            CharSequence line, int start) {
+        return start + 1 < line.length() 
+                && line.charAt(start) == '#' && line.charAt(start + 1) == '#';
+    }
+
+    /**
+     * Whether a unicode line terminator other than carriage return and line
+     * feed (which already delimit lines) is found from the given position.
+     * Lines holding one were never considered entries and still are not.
+     * @param line the line to test
+     * @param start where to start looking
+     * @return <code>true</code> if a line terminator was found
+     */
+    private static boolean hasLineTerminator(CharSequence line, int start) {
+        int length = line.length();
+        for (int i = start; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads physical lines one at a time, from either a character sequence
+     * or a reader.  Lines are terminated by "\r\n", "\r" or "\n".
+     */
+    private static final class LineScanner {
+        /** Reader buffer size. */
+        private static final int BUFFER_SIZE = 8192;
+
+        /** Character sequence source, or <code>null</code>. */
+        private final CharSequence text;
+        /** Reader source, or <code>null</code>. */
+        private final Reader reader;
+        /** Reader buffer. */
+        private final char[] buffer;
+        /** Next character position. */
+        private int position;
+        /** Number of characters available. */
+        private int limit;
+        /** Offset of the next character, from the beginning of input. */
+        private int offset;
+        /** Whether the end of input was reached. */
+        private boolean atEnd;
+
+        /**
+         * Constructor.
+         * @param text the characters to scan
+         * @param start offset of the first character to scan
+         */
+        LineScanner(CharSequence text, int start) {
+            this.text = text;
+            this.reader = null;
+            this.buffer = null;
+            this.limit = text.length();
+            this.position = start;
+            this.offset = start;
+        }
+        /**
+         * Constructor.
+         * @param reader the reader to scan
+         */
+        LineScanner(Reader reader) {
+            this.text = null;
+            this.reader = reader;
+            this.buffer = new char[BUFFER_SIZE];
+        }
+
+        /**
+         * Gets the offset of the next line to be read.
+         * @return an offset
+         */
+        int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Whether all lines were read.
+         * @return <code>true</code> if the end of input was reached
+         */
+        boolean isAtEnd() {
+            return atEnd || reader == null && position >= limit;
+        }
+
+        /**
+         * Reads the next line, without its terminator.
+         * @param line buffer receiving the line (cleared first)
+         * @return <code>false</code> if the end of input was reached
+         * @throws IOException problem reading
+         */
+        boolean nextLine(StringBuilder line) throws IOException {
+            line.setLength(0);
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+            while (c != -1) {
+                if (c == '\n') {
+                    return true;
+                }
+                if (c == '\r') {
+                    if (read() != '\n' && !atEnd) {
+                        position--;
+                        offset--;
+                    }
+                    return true;
+                }
+                line.append((char) c);
+                c = read();
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next character.
+         * @return the character read, or -1 at the end of input
+         * @throws IOException problem reading
+         */
+        private int read() throws IOException {
+            if (position >= limit) {
+                if (reader == null) {
+                    atEnd = true;
+                    return -1;
+                }
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    atEnd = true;
+                    return -1;
+                }
+            }
+            offset++;
+            if (reader == null) {
+                return text.charAt(position++);
+            }
+            return buffer[position++];
+        }
+    }
 }
@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted set of resource bundle keys, also giving access to keys by
+ * their position.  Lookups by key, neighbour keys and positions
+ * are all found in logarithmic time.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class SortedKeySet extends AbstractSet<String> {
+
+    /** Tree root. */
+    private Node root;
+    /** Number of structural modifications, for iterators. */
+    private int modCount;
+
+    /**
+     * Constructor.
+     */
+    public SortedKeySet() {
+        super();
+    }
+
+    /**
+     * @see java.util.AbstractCollection#size()
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    public boolean contains(Object o) {
+        return o instanceof String && find((String) o) != null;
+    }
+
+    /**
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    public boolean add(String key) {
+        int size = size();
+        root = insert(root, key);
+        if (size() == size) {
+            return false;
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        root = delete(root, (String) o);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @see java.util.AbstractCollection#clear()
+     */
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    /**
+     * @see java.util.AbstractCollection#iterator()
+     */
+    public Iterator<String> iterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * Gets the lowest key in this set.
+     * @return first key, or <code>null</code> if empty
+     */
+    public String first() {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    /**
+     * Gets the highest key in this set.
+     * @return last key, or <code>null</code> if empty
+     */
+    public String last() {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    /**
+     * Gets the lowest key strictly greater than the given key.
+     * @param key a key
+     * @return following key, or <code>null</code> if none
+     */
+    public String higher(String key) {
+        String higher = null;
+        Node node = root;
+        while (node != null) {
+            if (key.compareTo(node.key) < 0) {
+                higher = node.key;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return higher;
+    }
+
+    /**
+     * Gets the highest key strictly less than the given key.
+     * @param key a key
+     * @return preceding key, or <code>null</code> if none
+     */
+    public String lower(String key) {
+        String lower = null;
+        Node node = root;
+        while (node != null) {
+            if (key.compareTo(node.key) > 0) {
+                lower = node.key;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Gets the position of the given key in this set.
+     * @param key a key (may be <code>null</code>)
+     * @return key position, or -1 if the key is not in this set
+     */
+    public int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int index = 0;
+        Node node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the key found at the given position in this set.
+     * @param index key position
+     * @return a key
+     * @throws IndexOutOfBoundsException if there is no such position
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        Node node = root;
+        int position = index;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position > leftSize) {
+                position -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * Finds the node holding the given key.
+     * @param key a key
+     * @return a node, or <code>null</code>
+     */
+    private Node find(String key) {
+        Node node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts a key in the given subtree.
+     * @param node subtree root
+     * @param key key to insert
+     * @return new subtree root
+     */
+    private static Node insert(Node node, String key) {
+        if (node == null) {
+            return new Node(key);
+        }
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0) {
+            node.left = insert(node.left, key);
+        } else if (comparison > 0) {
+            node.right = insert(node.right, key);
+        } else {
+            return node;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Deletes a key from the given subtree.
+     * @param node subtree root
+     * @param key key to delete
+     * @return new subtree root
+     */
+    private static Node delete(Node node, String key) {
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0) {
+            node.left = delete(node.left, key);
+        } else if (comparison > 0) {
+            node.right = delete(node.right, key);
+        } else if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        } else {
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.key = successor.key;
+            node.right = delete(node.right, successor.key);
+        }
+        return balance(node);
+    }
+
+    /**
+     * Restores the balance of the given subtree, whose children are
+     * balanced.
+     * @param node subtree root
+     * @return new subtree root
+     */
+    private static Node balance(Node node) {
+        int difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (difference < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Rotates the given subtree to the left.
+     * @param node subtree root
+     * @return new subtree root
+     */
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * Rotates the given subtree to the right.
+     * @param node subtree root
+     * @return new subtree root
+     */
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * Gets the height of a subtree.
+     * @param node subtree root
+     * @return height
+     */
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Gets the number of keys in a subtree.
+     * @param node subtree root
+     * @return number of keys
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Tree node.
+     */
+    private static final class Node {
+        /** Node key. */
+        private String key;
+        /** Lower keys. */
+        private Node left;
+        /** Higher keys. */
+        private Node right;
+        /** Subtree height. */
+        private int height = 1;
+        /** Number of keys in subtree. */
+        private int size = 1;
+
+        /**
+         * Constructor.
+         * @param key node key
+         */
+        Node(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Updates height and size after children changed.
+         */
+        void update() {
+            height = Math.max(height(left), height(right)) + 1;
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+    /**
+     * Iterates through keys in ascending order.
+     */
+    private final class KeyIterator implements Iterator<String> {
+        /** Nodes left to visit, along with their right subtrees. */
+        private Node[] stack = new Node[height(root) + 1];
+        /** Number of nodes on stack. */
+        private int depth;
+        /** Last key returned, or <code>null</code>. */
+        private String lastKey;
+        /** Expected number of modifications. */
+        private int expectedModCount = modCount;
+
+        /**
+         * Constructor.
+         */
+        KeyIterator() {
+            pushLeft(root);
+        }
+
+        /**
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        /**
+         * @see java.util.Iterator#next()
+         */
+        public String next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack[--depth];
+            pushLeft(node.right);
+            lastKey = node.key;
+            return lastKey;
+        }
+
+        /**
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            SortedKeySet.this.remove(lastKey);
+            expectedModCount = modCount;
+            // nodes may have moved: find keys following the removed one
+            stack = new Node[height(root) + 1];
+            depth = 0;
+            Node node = root;
+            while (node != null) {
+                if (lastKey.compareTo(node.key) < 0) {
+                    stack[depth++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+            lastKey = null;
+        }
+
+        /**
+         * Pushes the given node and all its left descendants.
+         * @param node a node
+         */
+        private void pushLeft(Node node) {
+            Node current = node;
+            while (current != null) {
+                stack[depth++] = current;
+                current = current.left;
+            }
+        }
+    }
+}
@@ -27,7 +27,6 @@ import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleVisitorAdapter;
 import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
 import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
-import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 
 /**
  * Finds bundle entries having values similar (case insensitive) to the bundle 
@@ -44,11 +43,16 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
     /** Proximity analyzer used to find similarities. */
     private ProximityAnalyzer analyzer = WordCountAnalyzer.getInstance();
     
+    /** Minimum proximity level of similar values. */
+    private final double precision;
+    
     /**
      * Constructor.
+     * @param precision minimum proximity level of similar values
      */
-    public SimilarValuesVisitor() {
+    public SimilarValuesVisitor(double precision) {
         super();
+        this.precision = precision;
     }
 
     /**
@@ -65,9 +69,9 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
                 && entry != null && entryToMatch != null
                 && entry.getValue().length() > 0
                 && analyzer.analyse(
-                        entry.getValue().toLowerCase(), 
-                        entryToMatch.getValue().toLowerCase())
-                        >= RBEPreferences.getReportSimilarValuesPrecision()) {
+                        entry.getAnalyzedValue(), 
+                        entryToMatch.getAnalyzedValue(), precision)
+                        >= precision) {
             similars.add(entry);
         }
     }
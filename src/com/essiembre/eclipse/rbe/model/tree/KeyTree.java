@@ -20,15 +20,15 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import org.eclipse.jface.viewers.ViewerFilter;
-
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.Model;
@@ -45,18 +45,40 @@ import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
 public class KeyTree extends Model implements IKeyTreeVisitable {
 
     /** Caching of key tree items (key=ID; value=KeyTreeItem). **/
-    private final Map<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
+    private SortedMap<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
     /** Items found at root level. */
-    private final Set<KeyTreeItem> rootKeyItems = new TreeSet<KeyTreeItem>();
+    private Set<KeyTreeItem> rootKeyItems = new TreeSet<KeyTreeItem>();
     /** Updater responsible for tree changes. */
     private KeyTreeUpdater updater;
     /** Bundle group used to build the tree. */
     private BundleGroup bundleGroup;
     /** the currently selected key. */
     private String selectedKey;
+    /** Filter of key tree items. */
+    private final KeyTreeFilter keyFilter = new KeyTreeFilter(this);
+    /** Layout replaced by the last layout set, while still current. */
+    private KeyTreeLayout previousLayout;
+    /** Layout last requested, to be set. */
+    private KeyTreeLayout requestedLayout;
+    /** Whether a layout was set on this tree. */
+    private boolean laidOut;
+    /** Whether this tree only holds items being laid out. */
+    private boolean layingOut;
     
     /**
-     * Constructor.
+     * Constructor, for a key tree only holding items being laid out.
+     * @param bundleGroup bundle group used to build this tree
+     */
+    /*default*/ KeyTree(BundleGroup bundleGroup) {
+        super();
+        this.bundleGroup = bundleGroup;
+        this.layingOut = true;
+    }
+    
+    /**
+     * Constructor.  The tree is empty until a layout is set, either with
+     * {@link #setUpdater(KeyTreeUpdater)} or by building a layout from
+     * {@link #newLayout(KeyTreeUpdater)} in the background.
      * @param bundleGroup bundle group used to build this tree
      * @param updater updater used to handle tree modifications
      */
@@ -68,7 +90,11 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         // Set listeners
         bundleGroup.addListener(new IDeltaListener() {
             public void add(DeltaEvent event) {
+                previousLayout = null;
                 initBundle((Bundle) event.receiver());
+                // missing values depend on how many bundles there are
+                updateStatus();
+                addMissingKeys();
             }
             public void remove(DeltaEvent event) {
                 // do nothing
@@ -83,8 +109,6 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         for (Iterator<Bundle> iter = bundleGroup.iterator(); iter.hasNext();) {
             initBundle(iter.next());
         }
-        // Initial tree creation
-        load();
     }
 
     /**
@@ -100,10 +124,16 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
                 addKey(key);
             }
             public void remove(DeltaEvent event) {
-                String key = ((BundleEntry) event.receiver()).getKey();
-                Collection<BundleEntry> entries = bundleGroup.getBundleEntries(key);
-                if (entries.size() == 0) {
-                    removeKey(((BundleEntry) event.receiver()).getKey());
+                BundleEntry entry = (BundleEntry) event.receiver();
+                if (entry == null) {
+                    return;
+                }
+                String key = entry.getKey();
+                if (!bundleGroup.containsKey(key)) {
+                    removeKey(key);
+                } else {
+                    // other bundles still hold the key
+                    modifyKey(key);
                 }
             }
             public void modify(DeltaEvent event) {
@@ -156,24 +186,64 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @param key key to add
      */
     public void addKey(String key) {
+        previousLayout = null;
+        if (!updater.acceptsKey(bundleGroup, key)) {
+            // e.g. key now complete when only incomplete keys are shown
+            if (keyItemsCache.containsKey(key)) {
+                removeKey(key);
+            }
+            return;
+        }
+        int itemCount = keyItemsCache.size();
         updater.addKey(this, key);
-        fireAdd(keyItemsCache.get(key));
+        if (keyItemsCache.size() != itemCount) {
+            keyFilter.reset();
+        }
+        KeyTreeItem item = keyItemsCache.get(key);
+        if (item != null) {
+            item.updateStatus();
+        }
+        fireAdd(item);
     }
     /**
      * Removes a key from this tree.
      * @param key key to remove
      */
     public void removeKey(String key) {
-        Object item = keyItemsCache.get(key);
+        previousLayout = null;
+        KeyTreeItem item = keyItemsCache.get(key);
+        int itemCount = keyItemsCache.size();
         updater.removeKey(this, key);
-        fireRemove(item);
+        if (keyItemsCache.size() != itemCount) {
+            keyFilter.reset();
+        }
+        if (item != null && keyItemsCache.get(key) == item) {
+            // kept as a group of other keys
+            item.updateStatus();
+            fireModify(item);
+        } else {
+            fireRemove(item);
+        }
     }
     /**
      * Modifies a key on this tree.
      * @param key key to modify
      */
     public void modifyKey(String key) {
-        Object item = keyItemsCache.get(key);
+        previousLayout = null;
+        KeyTreeItem item = keyItemsCache.get(key);
+        if (updater.acceptsKey(bundleGroup, key)) {
+            if (item == null && bundleGroup.containsKey(key)) {
+                addKey(key);
+                return;
+            }
+        } else if (item != null) {
+            removeKey(key);
+            return;
+        }
+        if (item != null) {
+            item.updateStatus();
+        }
         fireModify(item);
     }
     /**
@@ -189,21 +259,39 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
             fireSelect(item);
         }
     }
-    public void selectNextKey() {
-        String currentKey = getSelectedKey();
-        boolean takeNext = false;
-        String nextKey = null;
-        for (String key : keyItemsCache.keySet()) {
-            if (takeNext) {
-                nextKey = key;
+    /**
+     * Finds the key tree items whose identifier starts with the given
+     * prefix, in identifier order.  Only items matching the prefix are
+     * looked at.
+     * @param prefix identifier prefix
+     * @param limit maximum number of items to return
+     * @return matching key tree items (up to <code>limit</code>)
+     */
+    public List<KeyTreeItem> findKeysWithPrefix(String prefix, int limit) {
+        List<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
+        for (Map.Entry<String, KeyTreeItem> entry 
+                : keyItemsCache.tailMap(prefix).entrySet()) {
+            if (items.size() >= limit || !entry.getKey().startsWith(prefix)) {
                 break;
             }
-            if (key.equals(currentKey))
-                takeNext = true;
+            items.add(entry.getValue());
+        }
+        return items;
+    }
+    /**
+     * Marks the key following the currently selected key as selected.
+     */
+    public void selectNextKey() {
+        String currentKey = getSelectedKey();
+        if (currentKey == null || !keyItemsCache.containsKey(currentKey)) {
+            return;
+        }
+        Iterator<String> iter = 
+                keyItemsCache.tailMap(currentKey).keySet().iterator();
+        iter.next(); // current key
+        if (iter.hasNext()) {
+            selectKey(iter.next());
         }
-        
-        if (nextKey != null)
-            selectKey(nextKey);			
     }
     /**
      * Gets the key tree updater.
@@ -214,14 +302,83 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
     /**
      * Sets the key tree updater. Doing so will automatically refresh the tree,
-     * which means, recreating it entirely.
+     * which means, recreating it entirely (unless the previous layout used
+     * an equal updater and bundles did not change since).
      * @param updater key tree updater
      */
     public void setUpdater(KeyTreeUpdater updater) {
-        this.updater = updater;
-        keyItemsCache.clear();
-        rootKeyItems.clear();
-        load();        
+        KeyTreeLayout layout = newLayout(updater);
+        layout.build(null);
+        setLayout(layout);
+    }
+
+    /**
+     * Creates a layout of this tree using the given updater, to be built on
+     * any thread and then set with {@link #setLayout(KeyTreeLayout)}.  The
+     * layout replaced by the last layout set is returned instead, already
+     * built, if it used an equal updater and bundles did not change since.
+     * @param updater key tree updater
+     * @return key tree layout
+     */
+    public KeyTreeLayout newLayout(KeyTreeUpdater updater) {
+        KeyTreeLayout layout = previousLayout;
+        if (layout == null || !layout.isCurrent()
+                || !updater.equals(layout.getUpdater())) {
+            layout = new KeyTreeLayout(bundleGroup, updater);
+        }
+        requestedLayout = layout;
+        return layout;
+    }
+
+    /**
+     * Whether the given layout is the last one requested, still to be set.
+     * @param layout layout created by {@link #newLayout(KeyTreeUpdater)}
+     * @return <code>true</code> if requested
+     */
+    public boolean isRequested(KeyTreeLayout layout) {
+        return layout == requestedLayout;
+    }
+
+    /**
+     * Replaces all items of this tree with the given layout, unless a newer
+     * layout was requested since.  Layouts not built, or built before keys
+     * they lay out were added or removed, are not set either: a new layout
+     * is to be requested instead.  The status of items is computed here,
+     * on the thread modifying the bundle group, so that values changed
+     * while building are accounted for.  The replaced layout is kept until
+     * bundles change.
+     * @param layout layout created by {@link #newLayout(KeyTreeUpdater)}
+     * @return <code>true</code> if the layout was set
+     */
+    public boolean setLayout(KeyTreeLayout layout) {
+        if (layout != requestedLayout || !layout.isCurrent()) {
+            return false;
+        }
+        requestedLayout = null;
+        KeyTreeLayout oldLayout = null;
+        if (laidOut) {
+            oldLayout = new KeyTreeLayout(
+                    bundleGroup, updater, keyItemsCache, rootKeyItems);
+        }
+        laidOut = true;
+        this.updater = layout.getUpdater();
+        keyFilter.reset();
+        keyItemsCache = layout.getKeyItems();
+        rootKeyItems = layout.getRootKeyItems();
+        for (KeyTreeItem item : keyItemsCache.values()) {
+            item.setKeyTree(this);
+        }
+        for (KeyTreeItem item : rootKeyItems) {
+            item.setParent(this);
+        }
+        if (!layout.isStatusComputed()) {
+            updateStatus();
+        }
+        if (getFilter() != null)
+            filterKeyItems(getFilter());
+        fireAdd(this);
+        previousLayout = oldLayout;
+        return true;
     }
 
     /**
@@ -246,44 +403,78 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
     
     /**
-     * Loads all key tree items, base on bundle group.
+     * Whether this tree only holds items being laid out, whose status is
+     * computed once the layout is set.
+     * @return <code>true</code> if laying out
+     */
+    /*default*/ boolean isLayingOut() {
+        return layingOut;
+    }
+
+    /**
+     * Updates the status of all key tree items.
      */
-    private final void load() {
-        for (String string : bundleGroup.getKeys()) {
-            /*
-             * Do not call "fireAdd" method from here for extreme performance
-             * improvement.  This is not an addition in the sense that we are
-             * laying out existing keys, not adding any new ones.  We will
-             * refresh the whole tree after we are done looping.
-             */
-            updater.addKey(this, string);
+    private void updateStatus() {
+        for (KeyTreeItem item : keyItemsCache.values()) {
+            item.updateStatus();
         }
-        if (getFilter() != null)
-            filterKeyItems(getFilter());
-        
-        fireAdd(this);
     }
-    
+
+    /**
+     * Adds keys laid out by the updater which are not on this tree yet,
+     * e.g. keys of a newly added bundle.
+     */
+    private void addMissingKeys() {
+        List<String> missingKeys = new ArrayList<String>();
+        for (String key : updater.getKeys(bundleGroup)) {
+            if (!keyItemsCache.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        for (String key : missingKeys) {
+            addKey(key);
+        }
+    }
+
     private String filter;
     
     /**
      * Returns the key filter that was applied using the last call to {@link #filterKeyItems(String)}
      * @return The key filter that was applied using the last call to {@link #filterKeyItems(String)}
      */
-    private String getFilter() {
+    public String getFilter() {
         return filter;
     }
     
     /**
      * Filters the key items by applying a substring-check for the given <code>filter</code> string. This information
-     * can be used later in {@link ViewerFilter}s to suppress filtered items. 
+     * can be used later in viewer filters to suppress filtered items. 
      * @param filter The <code>filter</code> that should be applied to the key items.
+     * @see KeyTreeFilter
      */
     public void filterKeyItems(String filter) {
         this.filter = filter;
-        for (KeyTreeItem item : rootKeyItems) {
-            item.applyFilter(filter);
-        }
+        keyFilter.apply(filter);
+    }
+
+    /**
+     * Creates the matches of the given <code>filter</code>, which can be found on any thread and then applied
+     * using {@link #filterKeyItems(KeyTreeFilter.Matches)}.
+     * @param filter The <code>filter</code> to find matches for.
+     * @return Matches not yet found.
+     */
+    public KeyTreeFilter.Matches newFilterMatches(String filter) {
+        return keyFilter.newMatches(filter);
+    }
+
+    /**
+     * Filters the key items using matches created by {@link #newFilterMatches(String)}. Matches that were not found,
+     * or found before key items were added or removed, are found again.
+     * @param matches The matches that should be applied to the key items.
+     */
+    public void filterKeyItems(KeyTreeFilter.Matches matches) {
+        this.filter = matches.getFilter();
+        keyFilter.apply(matches);
     }
     
     /**
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Filters key tree items on whether their identifier contains a given
+ * string.  Identifiers are indexed by their three-character sequences, so
+ * only items holding the least common sequence of the filter get checked.
+ * When a filter contains the previous one, only items previously matching
+ * get checked.  The index is built again when first needed after the tree
+ * items changed.
+ * <p>
+ * Finding matches can be done on any thread, using {@link Matches}
+ * obtained from {@link #newMatches(String)}.  Other methods must be called
+ * on the thread modifying the key tree.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class KeyTreeFilter {
+
+    /** Length of indexed character sequences. */
+    private static final int SEQUENCE_LENGTH = 3;
+    /** Number of items checked between two looks at the progress monitor. */
+    private static final int CHECK_INTERVAL = 1000;
+    
+    /** Key tree to filter. */
+    private final KeyTree keyTree;
+    /** Index of current tree items, or <code>null</code> if not indexed. */
+    private Index index;
+    /** Last matches applied, or <code>null</code>. */
+    private Matches lastMatches;
+    /** Items made visible by the last filter. */
+    private final List<KeyTreeItem> visibleItems = new ArrayList<KeyTreeItem>();
+    /** Whether all items are visible. */
+    private boolean allVisible = true;
+    /** Whether visibility of items not made visible is unknown. */
+    private boolean visibilityUnknown;
+
+    /**
+     * Constructor.
+     * @param keyTree key tree to filter
+     */
+    public KeyTreeFilter(KeyTree keyTree) {
+        super();
+        this.keyTree = keyTree;
+    }
+
+    /**
+     * Discards the index, for when key tree items were added or removed.
+     */
+    public void reset() {
+        index = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Creates matches for the given filter, to be found on any thread and
+     * then applied with {@link #apply(Matches)}.
+     * @param filter string to find in item identifiers
+     * @return matches, not yet found
+     */
+    public Matches newMatches(String filter) {
+        if (index == null) {
+            index = new Index(keyTree.getKeyItemsCache().values().toArray(
+                    new KeyTreeItem[keyTree.getKeyItemsCache().size()]));
+            visibilityUnknown = true;
+        }
+        return new Matches(index, filter, lastMatches);
+    }
+
+    /**
+     * Marks visible the items whose identifier contains the given filter,
+     * along with their parents, and all other items as not visible.
+     * @param filter string to find in item identifiers
+     */
+    public void apply(String filter) {
+        Matches matches = newMatches(filter);
+        matches.find(null);
+        apply(matches);
+    }
+
+    /**
+     * Marks visible the items of the given matches, along with their
+     * parents, and all other items as not visible.  Matches found before
+     * items were added or removed are found again.
+     * @param matches matches to apply
+     */
+    public void apply(Matches matches) {
+        if (matches.index != index || !matches.isFound()) {
+            apply(matches.filter);
+            return;
+        }
+        KeyTreeItem[] items = index.items;
+        if (matches.filter.length() == 0) {
+            if (!allVisible || visibilityUnknown) {
+                for (KeyTreeItem item : items) {
+                    item.setVisible(true);
+                }
+                allVisible = true;
+            }
+            visibleItems.clear();
+            visibilityUnknown = false;
+            lastMatches = null;
+            return;
+        }
+
+        if (allVisible || visibilityUnknown) {
+            for (KeyTreeItem item : items) {
+                item.setVisible(false);
+            }
+        } else {
+            for (KeyTreeItem item : visibleItems) {
+                item.setVisible(false);
+            }
+        }
+        visibleItems.clear();
+        allVisible = false;
+        visibilityUnknown = false;
+        Positions positions = matches.positions;
+        for (int i = 0; i < positions.size; i++) {
+            Object item = items[positions.positions[i]];
+            while (item instanceof KeyTreeItem 
+                    && !((KeyTreeItem) item).isVisible()) {
+                KeyTreeItem treeItem = (KeyTreeItem) item;
+                treeItem.setVisible(true);
+                visibleItems.add(treeItem);
+                item = treeItem.getParent();
+            }
+        }
+        lastMatches = matches;
+    }
+
+    /**
+     * Items whose identifier contains a filter.
+     */
+    public static final class Matches {
+        /** Index to search. */
+        private final Index index;
+        /** String to find in item identifiers. */
+        private final String filter;
+        /** Previous matches, or <code>null</code>. */
+        private Matches previous;
+        /** Positions of matching items, or <code>null</code> if not found. */
+        private volatile Positions positions;
+
+        /**
+         * Constructor.
+         * @param index index to search
+         * @param filter string to find in item identifiers
+         * @param previous previous matches, or <code>null</code>
+         */
+        private Matches(Index index, String filter, Matches previous) {
+            super();
+            this.index = index;
+            this.filter = filter;
+            this.previous = previous;
+        }
+
+        /**
+         * Gets the string to find in item identifiers.
+         * @return filter
+         */
+        public String getFilter() {
+            return filter;
+        }
+
+        /**
+         * Whether matches were found.
+         * @return <code>true</code> if found
+         */
+        public boolean isFound() {
+            return positions != null;
+        }
+
+        /**
+         * Finds the items whose identifier contains the filter.  Can be
+         * called on any thread.
+         * @param monitor progress monitor, or <code>null</code>
+         * @return <code>true</code> if found, <code>false</code> if
+         *         cancelled
+         */
+        public boolean find(IProgressMonitor monitor) {
+            if (filter.length() == 0) {
+                positions = new Positions();
+                return true;
+            }
+            KeyTreeItem[] items = index.items;
+            Positions candidates = null;
+            if (previous != null && previous.index == index
+                    && filter.indexOf(previous.filter) != -1) {
+                candidates = previous.positions;
+            } else if (filter.length() >= SEQUENCE_LENGTH) {
+                Map<String, Positions> sequences = index.getSequences(monitor);
+                if (sequences == null) {
+                    return false;
+                }
+                for (int i = 0; i + SEQUENCE_LENGTH <= filter.length(); i++) {
+                    Positions sequencePositions = sequences.get(
+                            filter.substring(i, i + SEQUENCE_LENGTH));
+                    if (sequencePositions == null) {
+                        positions = new Positions();
+                        return true;
+                    }
+                    if (candidates == null 
+                            || sequencePositions.size < candidates.size) {
+                        candidates = sequencePositions;
+                    }
+                }
+            }
+            previous = null;
+            Positions matches = new Positions();
+            int count = candidates == null ? items.length : candidates.size;
+            for (int i = 0; i < count; i++) {
+                if (monitor != null && i % CHECK_INTERVAL == 0 
+                        && monitor.isCanceled()) {
+                    return false;
+                }
+                int position = candidates == null 
+                        ? i : candidates.positions[i];
+                if (items[position].getId().indexOf(filter) != -1) {
+                    matches.add(position);
+                }
+            }
+            positions = matches;
+            return true;
+        }
+    }
+
+    /**
+     * Character sequences of key tree item identifiers.
+     */
+    private static final class Index {
+        /** Indexed items, sorted. */
+        private final KeyTreeItem[] items;
+        /** Positions of items holding each character sequence. */
+        private Map<String, Positions> sequences;
+
+        /**
+         * Constructor.
+         * @param items items to index
+         */
+        private Index(KeyTreeItem[] items) {
+            super();
+            this.items = items;
+        }
+
+        /**
+         * Gets the positions of items holding each character sequence,
+         * indexing them on first call.
+         * @param monitor progress monitor, or <code>null</code>
+         * @return sequence positions, or <code>null</code> if cancelled
+         */
+        private synchronized Map<String, Positions> getSequences(
+                IProgressMonitor monitor) {
+            if (sequences != null) {
+                return sequences;
+            }
+            Map<String, Positions> newSequences = 
+                    new HashMap<String, Positions>();
+            for (int i = 0; i < items.length; i++) {
+                if (monitor != null && i % CHECK_INTERVAL == 0 
+                        && monitor.isCanceled()) {
+                    return null;
+                }
+                String id = items[i].getId();
+                for (int j = 0; j + SEQUENCE_LENGTH <= id.length(); j++) {
+                    String sequence = id.substring(j, j + SEQUENCE_LENGTH);
+                    Positions positions = newSequences.get(sequence);
+                    if (positions == null) {
+                        positions = new Positions();
+                        newSequences.put(sequence, positions);
+                    }
+                    positions.add(i);
+                }
+            }
+            sequences = newSequences;
+            return sequences;
+        }
+    }
+
+    /**
+     * Growable list of item positions, in ascending order.
+     */
+    private static final class Positions {
+        /** Positions. */
+        private int[] positions = new int[4];
+        /** Number of positions. */
+        private int size;
+
+        /**
+         * Adds a position, unless already last.
+         * @param position position to add
+         */
+        void add(int position) {
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                int[] newPositions = new int[size * 2];
+                System.arraycopy(positions, 0, newPositions, 0, size);
+                positions = newPositions;
+            }
+            positions[size++] = position;
+        }
+    }
+}
@@ -20,10 +20,17 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.TreeSet;
 
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+
 /**
  * Leaf (tree) representation of one or several resource bundle entries sharing
  * the same key.
@@ -32,19 +39,44 @@ import java.util.TreeSet;
  */
 public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
 
+    /** Status flag: item identifier is a key of the bundle group. */
+    private static final int STATUS_KEY = 1;
+    /** Status flag: at least one entry matching this item is commented. */
+    private static final int STATUS_COMMENTED = 1 << 1;
+    /** Status flag: at least one entry matching this item misses a value. */
+    private static final int STATUS_MISSING = 1 << 2;
+
+    /** Children of all items having none. */
+    private static final KeyTreeItem[] NO_CHILDREN = new KeyTreeItem[0];
+
     /** Parent key tree. */
     private KeyTree keyTree;
-    /** Unique identifier (e.g., full key). */
+    /** Unique identifier (e.g., full key).  Also the key of this item in
+     *  the key tree cache, the same string instance being shared. */
     private String id;
-    /** Item name (e.g., last segment / display name). */
+    /** Item name, or <code>null</code> if it ends the identifier. */
     private String name;
+    /** Start of the item name in the identifier, if it ends it. */
+    private int nameStart;
     /** Parent item. */
     private Object parent;
-    /** Child items. */
-    private final SortedSet<KeyTreeItem> children = new TreeSet<KeyTreeItem>();
+    /** Child items, sorted, followed by unused slots. */
+    private KeyTreeItem[] children = NO_CHILDREN;
+    /** Number of child items. */
+    private int childCount;
+    /** Status flags, kept up to date by the key tree. */
+    private int status;
+    /** Number of keys among nested children. */
+    private int nestedKeyCount;
+    /** Number of keys among nested children missing a value. */
+    private int nestedMissingCount;
+    /** Number of keys among nested children having a commented entry. */
+    private int nestedCommentedCount;
     
     /**
-     * Constructor.
+     * Constructor.  A name ending the identifier is not kept apart from it.
+     * Items of a key tree being laid out get their status once the layout
+     * is set.
      * @param keyTree associated key tree
      * @param id unique identifier
      * @param name name
@@ -53,7 +85,14 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
         super();
         this.keyTree = keyTree;
         this.id = id;
-        this.name = name;
+        if (id.endsWith(name)) {
+            this.nameStart = id.length() - name.length();
+        } else {
+            this.name = name;
+        }
+        if (!keyTree.isLayingOut()) {
+            this.status = computeStatus();
+        }
     }
     
     /**
@@ -62,7 +101,7 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @return    true <=> This item is a leaf.
      */
     public boolean isLeaf() {
-        return (children.isEmpty());
+        return childCount == 0;
     }
     
     /**
@@ -80,11 +119,40 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
         this.parent = parent;
     }
     /**
-     * Gets the "children" attribute.
-     * @return Returns the children.
+     * Gets the "children" attribute.  Use <code>isLeaf()</code> to merely
+     * check for children, without copying them.
+     * @return Returns a copy of the children, sorted (read-only).
+     */
+    public List<KeyTreeItem> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(toChildArray()));
+    }
+    /**
+     * Gets the number of children.
+     * @return number of children
+     */
+    public int getChildCount() {
+        return childCount;
+    }
+    /**
+     * Gets the child at the given index, children being sorted.
+     * @param index index of the child, less than the number of children
+     * @return child item
      */
-    public SortedSet<KeyTreeItem> getChildren() {
-        return children;
+    public KeyTreeItem getChild(int index) {
+        if (index >= childCount) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + childCount); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return children[index];
+    }
+    /**
+     * Gets the children as an array, e.g. for tree content providers.
+     * @return a copy of the children, sorted
+     */
+    public KeyTreeItem[] toChildArray() {
+        KeyTreeItem[] childrenCopy = new KeyTreeItem[childCount];
+        System.arraycopy(children, 0, childrenCopy, 0, childCount);
+        return childrenCopy;
     }
     /**
      * Gets the "id" attribute.
@@ -100,12 +168,22 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public KeyTree getKeyTree() {
         return keyTree;
     }
+    /**
+     * Sets the "keyTree" attribute, when moving a layout to a key tree.
+     * @param keyTree The keyTree to set.
+     */
+    /*default*/ void setKeyTree(KeyTree keyTree) {
+        this.keyTree = keyTree;
+    }
     /**
      * Gets the "name" attribute.
      * @return Returns the name.
      */
     public String getName() {
-        return name;
+        if (name != null) {
+            return name;
+        }
+        return id.substring(nameStart);
     }
 
     /**
@@ -114,10 +192,7 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      */
     public Set<KeyTreeItem> getNestedChildren() {
         Set<KeyTreeItem> nestedChildren = new TreeSet<KeyTreeItem>();
-        nestedChildren.addAll(children);
-        for (KeyTreeItem item : children) {
-            nestedChildren.addAll(item.getNestedChildren());
-        } 
+        addNestedChildren(nestedChildren);
         return nestedChildren;
     }
    
@@ -126,14 +201,213 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @param item child to add
      */
     public void addChildren(KeyTreeItem item) {
-        children.add(item);
+        int index = Arrays.binarySearch(children, 0, childCount, item);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        if (childCount == children.length) {
+            KeyTreeItem[] newChildren = 
+                    new KeyTreeItem[Math.max(2, childCount * 2)];
+            System.arraycopy(children, 0, newChildren, 0, childCount);
+            children = newChildren;
+        }
+        System.arraycopy(
+                children, index, children, index + 1, childCount - index);
+        children[index] = item;
+        childCount++;
+        addNestedCounts(item.getKeyCount(), item.getMissingCount(),
+                item.getCommentedCount());
     }
     /**
      * Removes a child from this item.
      * @param item child to remove
      */
     public void removeChildren(KeyTreeItem item) {
-        children.remove(item);
+        int index = Arrays.binarySearch(children, 0, childCount, item);
+        if (index < 0) {
+            return;
+        }
+        childCount--;
+        System.arraycopy(
+                children, index + 1, children, index, childCount - index);
+        children[childCount] = null;
+        if (childCount == 0) {
+            children = NO_CHILDREN;
+        }
+        addNestedCounts(-item.getKeyCount(), -item.getMissingCount(),
+                -item.getCommentedCount());
+    }
+
+    /**
+     * Adds all children of this item, from all levels, to the given set.
+     * @param nestedChildren set to add children to
+     */
+    private void addNestedChildren(Set<KeyTreeItem> nestedChildren) {
+        for (int i = 0; i < childCount; i++) {
+            nestedChildren.add(children[i]);
+            children[i].addNestedChildren(nestedChildren);
+        }
+    }
+
+    /**
+     * Checks whether this item identifier is a key of the bundle group.
+     * @return <code>true</code> if this item is a key
+     */
+    public boolean isKey() {
+        return (status & STATUS_KEY) != 0;
+    }
+    /**
+     * Checks whether at least one bundle entry matching this item is
+     * commented out.
+     * @return <code>true</code> if one entry is commented
+     */
+    public boolean isCommented() {
+        return (status & STATUS_COMMENTED) != 0;
+    }
+    /**
+     * Checks whether bundle entries matching this item are missing any
+     * values.
+     * @return <code>true</code> if missing a value
+     */
+    public boolean isMissingValue() {
+        return (status & STATUS_MISSING) != 0;
+    }
+    /**
+     * Checks whether bundle entries matching this item do not miss any
+     * values, but at least one nested child does.
+     * @return <code>true</code> if a child only is missing a value
+     */
+    public boolean isMissingChildValueOnly() {
+        return !isMissingValue() && nestedMissingCount > 0;
+    }
+
+    /**
+     * Gets the number of keys among all nested children of this item.
+     * @return number of nested keys
+     */
+    public int getNestedKeyCount() {
+        return nestedKeyCount;
+    }
+    /**
+     * Gets the number of keys among all nested children of this item
+     * which are missing a value.
+     * @return number of nested keys missing a value
+     */
+    public int getNestedMissingCount() {
+        return nestedMissingCount;
+    }
+    /**
+     * Gets the number of keys among all nested children of this item
+     * having at least one commented entry.
+     * @return number of nested commented keys
+     */
+    public int getNestedCommentedCount() {
+        return nestedCommentedCount;
+    }
+
+    /**
+     * Computes again the status of this item from the bundle group, and
+     * updates nested counts of its parents accordingly.  To be called
+     * whenever bundle entries matching this item change.
+     */
+    public void updateStatus() {
+        int oldStatus = status;
+        status = computeStatus();
+        if (status != oldStatus && parent instanceof KeyTreeItem) {
+            ((KeyTreeItem) parent).addNestedCounts(
+                    getFlag(status, STATUS_KEY)
+                            - getFlag(oldStatus, STATUS_KEY),
+                    getFlag(status, STATUS_MISSING)
+                            - getFlag(oldStatus, STATUS_MISSING),
+                    getFlag(status, STATUS_COMMENTED)
+                            - getFlag(oldStatus, STATUS_COMMENTED));
+        }
+    }
+
+    /**
+     * Adds the given amounts to the nested counts of this item and its
+     * parents.
+     * @param keys number of keys to add
+     * @param missing number of keys missing a value to add
+     * @param commented number of commented keys to add
+     */
+    private void addNestedCounts(int keys, int missing, int commented) {
+        if (keys == 0 && missing == 0 && commented == 0) {
+            return;
+        }
+        Object item = this;
+        while (item instanceof KeyTreeItem) {
+            KeyTreeItem treeItem = (KeyTreeItem) item;
+            treeItem.nestedKeyCount += keys;
+            treeItem.nestedMissingCount += missing;
+            treeItem.nestedCommentedCount += commented;
+            item = treeItem.parent;
+        }
+    }
+
+    /**
+     * Gets the number of keys held by this item and its nested children.
+     * @return number of keys
+     */
+    private int getKeyCount() {
+        return nestedKeyCount + getFlag(status, STATUS_KEY);
+    }
+    /**
+     * Gets the number of keys missing a value held by this item and its
+     * nested children.
+     * @return number of keys missing a value
+     */
+    private int getMissingCount() {
+        return nestedMissingCount + getFlag(status, STATUS_MISSING);
+    }
+    /**
+     * Gets the number of commented keys held by this item and its nested
+     * children.
+     * @return number of commented keys
+     */
+    private int getCommentedCount() {
+        return nestedCommentedCount + getFlag(status, STATUS_COMMENTED);
+    }
+
+    /**
+     * Gets a status flag as a count.
+     * @param status status flags
+     * @param flag flag to get
+     * @return 1 if the flag is set, 0 otherwise
+     */
+    private static int getFlag(int status, int flag) {
+        return (status & flag) != 0 ? 1 : 0;
+    }
+
+    /**
+     * Computes the status flags of this item from the bundle group.
+     * @return status flags
+     */
+    private int computeStatus() {
+        int newStatus = 0;
+        BundleGroup bundleGroup = keyTree.getBundleGroup();
+        if (bundleGroup.containsKey(id)) {
+            newStatus |= STATUS_KEY;
+            int entryCount = 0;
+            for (Iterator<Bundle> iter = bundleGroup.iterator();
+                    iter.hasNext();) {
+                BundleEntry entry = iter.next().getEntry(id);
+                if (entry != null) {
+                    entryCount++;
+                    if (entry.isCommented()) {
+                        newStatus |= STATUS_COMMENTED;
+                    }
+                    if (entry.getValue().length() == 0) {
+                        newStatus |= STATUS_MISSING;
+                    }
+                }
+            }
+            if (entryCount != bundleGroup.getSize()) {
+                newStatus |= STATUS_MISSING;
+            }
+        }
+        return newStatus;
     }
     
     /**
@@ -208,8 +482,8 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
         if (id.indexOf(filter) != -1) {
             visible = true;
         }
-        for (KeyTreeItem child : children) {
-            if (child.applyFilter(filter)) {
+        for (int i = 0; i < childCount; i++) {
+            if (children[i].applyFilter(filter)) {
                 visible = true;
             }
         }
@@ -223,4 +497,12 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public boolean isVisible() {
         return visible;
     }
+
+    /**
+     * Sets whether this node is visible under the current filter.
+     * @param visible <code>true</code> if visible
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
+
+/**
+ * Key tree items laid out by a given updater, which can be built on any
+ * thread and then set on a key tree with
+ * {@link KeyTree#setLayout(KeyTreeLayout)}.  Building only reads the keys
+ * taken from the bundle group when the layout was created, item status
+ * being computed when set.  A layout only matches the keys of the bundle
+ * group as they were when created: layouts built while the updater keys
+ * changed are not set, while changed values only change item status.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class KeyTreeLayout {
+
+    /** Number of keys laid out between two looks at the progress monitor. */
+    private static final int CHECK_INTERVAL = 1000;
+
+    /** Bundle group laid out. */
+    private final BundleGroup bundleGroup;
+    /** Updater laying out the keys. */
+    private final KeyTreeUpdater updater;
+    /** Updater layout change count this layout matches. */
+    private final int layoutChangeCount;
+    /** Bundle group modification count the status of items matches. */
+    private final int modificationCount;
+    /** Keys to lay out, or <code>null</code> once built. */
+    private String[] keys;
+    /** Items of this layout (key=ID; value=KeyTreeItem). */
+    private SortedMap<String, KeyTreeItem> keyItems;
+    /** Items found at root level. */
+    private Set<KeyTreeItem> rootKeyItems;
+    /** Whether this layout is built. */
+    private volatile boolean built;
+    /** Whether the status of items is computed already. */
+    private final boolean statusComputed;
+
+    /**
+     * Constructor, for a layout to be built.  Must be called on the thread
+     * modifying the bundle group.
+     * @param bundleGroup bundle group to lay out
+     * @param updater updater laying out the keys
+     */
+    /*default*/ KeyTreeLayout(BundleGroup bundleGroup, KeyTreeUpdater updater) {
+        super();
+        this.bundleGroup = bundleGroup;
+        this.updater = updater;
+        this.layoutChangeCount = updater.getLayoutChangeCount(bundleGroup);
+        this.modificationCount = bundleGroup.getModificationCount();
+        Set<String> updaterKeys = updater.getKeys(bundleGroup);
+        this.keys = updaterKeys.toArray(new String[updaterKeys.size()]);
+        this.statusComputed = false;
+    }
+
+    /**
+     * Constructor, for a layout already built.
+     * @param bundleGroup bundle group laid out
+     * @param updater updater which laid out the keys
+     * @param keyItems items of the layout
+     * @param rootKeyItems items found at root level
+     */
+    /*default*/ KeyTreeLayout(BundleGroup bundleGroup, KeyTreeUpdater updater,
+            SortedMap<String, KeyTreeItem> keyItems,
+            Set<KeyTreeItem> rootKeyItems) {
+        super();
+        this.bundleGroup = bundleGroup;
+        this.updater = updater;
+        this.layoutChangeCount = updater.getLayoutChangeCount(bundleGroup);
+        this.modificationCount = bundleGroup.getModificationCount();
+        this.keyItems = keyItems;
+        this.rootKeyItems = rootKeyItems;
+        this.built = true;
+        this.statusComputed = true;
+    }
+
+    /**
+     * Gets the updater laying out the keys.
+     * @return key tree updater
+     */
+    public KeyTreeUpdater getUpdater() {
+        return updater;
+    }
+
+    /**
+     * Whether this layout is built.
+     * @return <code>true</code> if built
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Builds this layout, unless already built.  Can be called on any
+     * thread, the bundle group not being read.
+     * @param monitor progress monitor, or <code>null</code>
+     * @return <code>true</code> if built, <code>false</code> if cancelled
+     */
+    public boolean build(IProgressMonitor monitor) {
+        if (built) {
+            return true;
+        }
+        KeyTree target = new KeyTree(bundleGroup);
+        for (int i = 0; i < keys.length; i++) {
+            if (monitor != null && i % CHECK_INTERVAL == 0
+                    && monitor.isCanceled()) {
+                return false;
+            }
+            updater.addAcceptedKey(target, keys[i]);
+        }
+        keyItems = (SortedMap<String, KeyTreeItem>) target.getKeyItemsCache();
+        rootKeyItems = target.getRootKeyItems();
+        keys = null;
+        built = true;
+        return true;
+    }
+
+    /**
+     * Whether this layout is built and still lays out the keys of the
+     * bundle group, values having possibly changed since.  Must be called
+     * on the thread modifying the bundle group.
+     * @return <code>true</code> if current
+     */
+    public boolean isCurrent() {
+        return built && layoutChangeCount 
+                == updater.getLayoutChangeCount(bundleGroup);
+    }
+
+    /**
+     * Gets the items of this layout.
+     * @return items (key=ID; value=KeyTreeItem)
+     */
+    /*default*/ SortedMap<String, KeyTreeItem> getKeyItems() {
+        return keyItems;
+    }
+
+    /**
+     * Whether the status of items is computed already and bundles did not
+     * change since.  Items built by {@link #build(IProgressMonitor)} get
+     * their status when set.  Must be called on the thread modifying the
+     * bundle group.
+     * @return <code>true</code> if computed
+     */
+    /*default*/ boolean isStatusComputed() {
+        return statusComputed
+                && modificationCount == bundleGroup.getModificationCount();
+    }
+
+    /**
+     * Gets the items found at root level.
+     * @return root items
+     */
+    /*default*/ Set<KeyTreeItem> getRootKeyItems() {
+        return rootKeyItems;
+    }
+}
@@ -54,4 +54,25 @@ public class FlatKeyTreeUpdater extends KeyTreeUpdater {
             keyCache.put(key, item);
         }
     }
+
+    /**
+     * Returns a hash code of this updater.
+     */
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    /**
+     * Returns whether the given object is an updater laying out keys the
+     * same way.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        return getClass() == obj.getClass();
+    }
 }
@@ -46,6 +46,9 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
     }
     
     /**
+     * Adds an item for each group of the key.  Item identifiers are the
+     * groups up to the item one, joined with the separator.  Any separator
+     * character delimits groups, and empty groups are skipped.
      * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater#addKey(
      *         com.essiembre.eclipse.rbe.model.tree.KeyTree, java.lang.String)
      */
@@ -53,33 +56,117 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
     public void addKey(KeyTree keyTree, String key) {
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
         if (!keyCache.containsKey(key)) {
-            StringBuffer idBuf = new StringBuffer();
-            Object parent = keyTree;
-            for (StringTokenizer tokens = new StringTokenizer(key, separator);
-                    tokens.hasMoreTokens();) {
-                String name = tokens.nextToken();
-                if (!(parent instanceof KeyTree)) {
-                    idBuf.append(separator);
-                }
-                idBuf.append(name);
-                String id = idBuf.toString();
-                if (!keyCache.containsKey(id)) {
-                    KeyTreeItem item = new KeyTreeItem(keyTree, id, name);
-                    item.setParent(parent);
-                    if (parent instanceof KeyTree) {
-                        keyTree.getRootKeyItems().add(item);
-                    } else {
-                        ((KeyTreeItem) parent).addChildren(item);
-                    }
-                    keyCache.put(id, item);
-                    parent = item;
-                } else {
-                    parent = keyCache.get(id);
+            if (isPlainKey(key)) {
+                addPlainKey(keyTree, key);
+            } else {
+                addTokenizedKey(keyTree, key);
+            }
+        }
+    }
+
+    /**
+     * Checks whether all groups of a key are non-empty and free of 
+     * separator characters, in which case item identifiers are the key up
+     * to the end of their group.
+     * @param key the key to check
+     * @return <code>true</code> if item identifiers are key prefixes
+     */
+    private boolean isPlainKey(String key) {
+        int start = 0;
+        while (true) {
+            int end = separator.length() == 0 
+                    ? -1 : key.indexOf(separator, start);
+            int groupEnd = end == -1 ? key.length() : end;
+            if (groupEnd == start) {
+                return false;
+            }
+            for (int i = start; i < groupEnd; i++) {
+                if (separator.indexOf(key.charAt(i)) != -1) {
+                    return false;
                 }
             }
+            if (end == -1) {
+                return true;
+            }
+            start = end + separator.length();
+        }
+    }
+    
+    /**
+     * Adds items for a key whose item identifiers are key prefixes, the key
+     * itself being used for its own item.
+     * @param keyTree key tree to add items to
+     * @param key key to add
+     */
+    private void addPlainKey(KeyTree keyTree, String key) {
+        Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
+        Object parent = keyTree;
+        int start = 0;
+        while (true) {
+            int end = separator.length() == 0 
+                    ? -1 : key.indexOf(separator, start);
+            boolean last = end == -1;
+            if (last) {
+                end = key.length();
+            }
+            String id = last ? key : key.substring(0, end);
+            parent = addItem(keyTree, keyCache, parent, id, 
+                    key.substring(start, end));
+            if (last) {
+                break;
+            }
+            start = end + separator.length();
         }
     }
 
+    /**
+     * Adds items for any key, joining its tokens to build item identifiers.
+     * @param keyTree key tree to add items to
+     * @param key key to add
+     */
+    private void addTokenizedKey(KeyTree keyTree, String key) {
+        Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
+        StringBuffer idBuf = new StringBuffer();
+        Object parent = keyTree;
+        for (StringTokenizer tokens = new StringTokenizer(key, separator);
+                tokens.hasMoreTokens();) {
+            String name = tokens.nextToken();
+            if (!(parent instanceof KeyTree)) {
+                idBuf.append(separator);
+            }
+            idBuf.append(name);
+            parent = addItem(keyTree, keyCache, parent, idBuf.toString(), 
+                    name);
+        }
+    }
+
+    /**
+     * Adds an item under the given parent, unless one already exists with
+     * the same identifier.
+     * @param keyTree key tree to add the item to
+     * @param keyCache key tree item cache
+     * @param parent parent key tree or item
+     * @param id item identifier
+     * @param name item name
+     * @return the item having the given identifier
+     */
+    private static KeyTreeItem addItem(KeyTree keyTree, 
+            Map<String, KeyTreeItem> keyCache, Object parent, String id, 
+            String name) {
+        KeyTreeItem item = keyCache.get(id);
+        if (item == null) {
+            item = new KeyTreeItem(keyTree, id, name);
+            item.setParent(parent);
+            if (parent instanceof KeyTree) {
+                keyTree.getRootKeyItems().add(item);
+            } else {
+                ((KeyTreeItem) parent).addChildren(item);
+            }
+            keyCache.put(id, item);
+        }
+        return item;
+    }
+
     /**
      * Gets the key group separator.
      * @return key group separator.
@@ -94,4 +181,31 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
     public void setSeparator(String separator) {
         this.separator = separator;
     }
+
+    /**
+     * Returns a hash code of this updater.
+     */
+    @Override
+    public int hashCode() {
+        return (separator == null) ? 0 : separator.hashCode();
+    }
+
+    /**
+     * Returns whether the given object is an updater laying out keys the
+     * same way.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        final GroupedKeyTreeUpdater other = (GroupedKeyTreeUpdater) obj;
+        if (separator == null) {
+            return other.separator == null;
+        }
+        return separator.equals(other.separator);
+    }
 }
@@ -21,12 +21,10 @@
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
 
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Set;
 
 
 /**
@@ -58,24 +56,70 @@ public class IncompletionUpdater extends KeyTreeUpdater {
      */
     @Override
     public void addKey(KeyTree keytree, String key) {
-        Collection<BundleEntry> entries  = bundlegroup.getBundleEntries(key);
-        int        count    = 0;
-        Iterator<BundleEntry>   iterator = entries.iterator();
-        while(iterator.hasNext()) {
-            Object val = iterator.next();
-            if(val instanceof BundleEntry) {
-                BundleEntry entry = (BundleEntry) val;
-                String      value = entry.getValue();
-                if((value != null) && (value.length() > 0)) {
-                    count++;
-                }
-            }
-        }
         // we only delegate entries in case there are some incomplete ones
-        if (count < bundlegroup.getBundleCount()) {
+        if (acceptsKey(bundlegroup, key)) {
             delegation.addKey(keytree, key);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAcceptedKey(KeyTree keytree, String key) {
+        delegation.addAcceptedKey(keytree, key);
+    }
+
+    /**
+     * Only incomplete keys, as tracked by the bundle group.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getKeys(BundleGroup group) {
+        return group.getIncompleteKeys();
+    }
+
+    /**
+     * Keys becoming complete or incomplete count as well.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLayoutChangeCount(BundleGroup group) {
+        return group.getKeyChangeCount() + group.getCompletenessChangeCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsKey(BundleGroup group, String key) {
+        return !group.isKeyComplete(key) && delegation.acceptsKey(group, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return delegation.hashCode();
+    }
+
+    /**
+     * Returns whether the given object is an updater laying out the same
+     * incomplete keys the same way.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        final IncompletionUpdater other = (IncompletionUpdater) obj;
+        return bundlegroup == other.bundlegroup 
+                && delegation.equals(other.delegation);
+    }
     
     
 } /* ENDCLASS */
@@ -21,7 +21,9 @@
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
 import java.util.Map;
+import java.util.Set;
 
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 
@@ -47,14 +49,58 @@ public abstract class KeyTreeUpdater {
     public abstract void addKey(KeyTree keyTree, String key);
 
     /**
-     * Removes a key from the key tree.
+     * Adds a key returned by {@link #getKeys(BundleGroup)} to the key tree,
+     * without looking at the bundle group again.  Used to lay out keys
+     * away from the thread modifying the bundle group.
+     * @param keyTree key tree on which to add the key
+     * @param key key to add
+     */
+    public void addAcceptedKey(KeyTree keyTree, String key) {
+        addKey(keyTree, key);
+    }
+
+    /**
+     * Gets the keys laid out by this updater when building a key tree.
+     * @param bundleGroup bundle group the key tree is built from
+     * @return keys to add to the key tree
+     */
+    public Set<String> getKeys(BundleGroup bundleGroup) {
+        return bundleGroup.getKeys();
+    }
+
+    /**
+     * Gets a count changing whenever the keys laid out by this updater may
+     * have changed, telling whether a layout is still current.  Only keys
+     * added or removed count by default: changed values merely change the
+     * status of items.
+     * @param bundleGroup bundle group the key tree is built from
+     * @return layout change count
+     */
+    public int getLayoutChangeCount(BundleGroup bundleGroup) {
+        return bundleGroup.getKeyChangeCount();
+    }
+
+    /**
+     * Whether the given key is laid out by this updater.  Checked again
+     * by the key tree whenever entries of the key change.
+     * @param bundleGroup bundle group the key tree is built from
+     * @param key key to check
+     * @return <code>true</code> if the key belongs on the key tree
+     */
+    public boolean acceptsKey(BundleGroup bundleGroup, String key) {
+        return true;
+    }
+
+    /**
+     * Removes a key from the key tree.  Items still having children are
+     * kept as groups.
      * @param keyTree key tree from which to remove the key
      * @param key key to remove
      */
     public void removeKey(KeyTree keyTree, String key) {
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
         KeyTreeItem item = keyCache.get(key);
-        if (item != null) {
+        if (item != null && item.isLeaf()) {
             Object parent = item.getParent();
             if (parent instanceof KeyTree) {
                 ((KeyTree) parent).getRootKeyItems().remove(item);
@@ -66,9 +112,10 @@ public abstract class KeyTreeUpdater {
             // remove parents with no children having invalid keys. 
             if (parent instanceof KeyTreeItem) {
                 KeyTreeItem parentItem = (KeyTreeItem) parent;
-                boolean isKey = 
-                        keyTree.getBundleGroup().isKey(parentItem.getId());
-                boolean hasChildren = parentItem.getChildren().size() > 0;
+                BundleGroup bundleGroup = keyTree.getBundleGroup();
+                boolean isKey = bundleGroup.isKey(parentItem.getId())
+                        && acceptsKey(bundleGroup, parentItem.getId());
+                boolean hasChildren = !parentItem.isLeaf();
                 if (!isKey && ! hasChildren) {
                     removeKey(keyTree, parentItem.getId());
                 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.Arrays;
+
+/**
+ * Text along with the forms proximity analyzers work on, computed once so
+ * the same text can be analysed against many others without being split
+ * again.  Instances are immutable.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class AnalyzedText {
+
+    /** The text. */
+    private final String text;
+    /** Words of the text, as split by <code>WordCountAnalyzer</code>, 
+     *  sorted (duplicates kept). */
+    private final String[] words;
+    /** Bits set by hash codes of the text words. */
+    private final long signature;
+    
+    /**
+     * Constructor.
+     * @param text text to analyse
+     */
+    public AnalyzedText(String text) {
+        super();
+        this.text = text;
+        words = WordCountAnalyzer.split(text);
+        Arrays.sort(words);
+        long bits = 0L;
+        for (String word : words) {
+            bits |= 1L << (word.hashCode() & (Long.SIZE - 1));
+        }
+        signature = bits;
+    }
+
+    /**
+     * Gets the given object as analysed text.  Objects other than analysed
+     * texts are converted to strings using the <code>toString()</code>
+     * method.
+     * @param obj an object
+     * @return analysed text
+     */
+    public static AnalyzedText valueOf(Object obj) {
+        if (obj instanceof AnalyzedText) {
+            return (AnalyzedText) obj;
+        }
+        return new AnalyzedText(obj.toString());
+    }
+    
+    /**
+     * Gets the text.
+     * @return the text
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * Gets the number of words of the text.
+     * @return word count
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+    
+    /**
+     * Gets the sorted words of the text.  The array must not be modified.
+     * @return words
+     */
+    /*default*/ String[] getWords() {
+        return words;
+    }
+    
+    /**
+     * Gets a signature of the words of the text.  Texts sharing a word have
+     * signatures sharing at least one bit.
+     * @return word signature
+     */
+    public long getSignature() {
+        return signature;
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return text;
+    }
+}
@@ -25,8 +25,10 @@ package com.essiembre.eclipse.rbe.model.utils;
  * Compares two strings (case insensitive) and returns a proximity level based
  * on the number of character transformation required to have identical strings.
  * Non-string objects are converted to strings using the <code>toString()</code>
- * method. The exact algorithm was taken from Micheal Gilleland
- * (<a href="http://merriampark.com/ld.htm">http://merriampark.com/ld.htm</a>).
+ * method.  The distance is computed with Myers' bit-parallel algorithm
+ * when the shorter string fits in 64 bits, and otherwise within a diagonal
+ * band wide enough for the largest distance of interest (Ukkonen).  Both
+ * stop as soon as the distance is known to exceed that largest distance.
  * @author Pascal Essiembre
  * @version $Author$ $Revision$ $Date$
  */
@@ -35,6 +37,18 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
     private static final ProximityAnalyzer INSTANCE =
             new LevenshteinDistanceAnalyzer();
     
+    /** Size of character bit mask tables (a power of two). */
+    private static final int MASK_TABLE_SIZE = 128;
+    
+    /** Work buffers of the current thread. */
+    private static final ThreadLocal<Buffers> BUFFERS = 
+            new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+    
     /**
      * Constructor.
      */
@@ -55,8 +69,8 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
      * @see com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer
      *      #analyse(java.lang.Object, java.lang.Object)
      */
-   public double analyse(Object obj1, Object obj2) {
-        if (obj2 == null || obj2 == null) {
+    public double analyse(Object obj1, Object obj2) {
+        if (obj1 == null || obj2 == null) {
             return 0;
         }
 
@@ -67,29 +81,33 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
 
         return 1d - (distance / maxLength);
     }
-   
-   
+
     /**
-     * Retuns the minimum of three values.
-     * @param a first value
-     * @param b second value
-     * @param c third value
-     * @return lowest value
+     * @see com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer
+     *      #analyse(java.lang.Object, java.lang.Object, double)
      */
-    private int minimum(int a, int b, int c) {
-        int mi;
+    public double analyse(Object obj1, Object obj2, double minProximity) {
+        if (obj1 == null || obj2 == null) {
+            return 0;
+        }
 
-        mi = a;
-        if (b < mi) {
-            mi = b;
+        String str1 = obj1.toString();
+        String str2 = obj2.toString();
+        int maxLength = Math.max(str1.length(), str2.length());
+        if (maxLength == 0) {
+            return analyse(str1, str2);
         }
-        if (c < mi) {
-            mi = c;
+        int maxDistance = getMaxDistance(maxLength, minProximity);
+        if (maxDistance < 0) {
+            return 0;
         }
-        return mi;
-
+        int distance = distance(str1, str2, maxDistance);
+        if (distance > maxDistance) {
+            return 0;
+        }
+        return 1d - ((double) distance / maxLength);
     }
-
+    
     /***
      * Compute the distance
      * @param s source string
@@ -97,68 +115,233 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
      * @return distance
      */
     public int distance(String s, String t) {
-        int d[][]; // matrix
-        int n; // length of s
-        int m; // length of t
-        int i; // iterates through s
-        int j; // iterates through t
-        char s_i; // ith character of s
-        char t_j; // jth character of t
-        int cost; // cost
-
-        // Step 1
+        return distance(s, t, Integer.MAX_VALUE);
+    }
 
-        n = s.length();
-        m = t.length();
-        if (n == 0) {
+    /**
+     * Computes the distance, giving up once it exceeds the given maximum.
+     * @param s source string
+     * @param t target string
+     * @param maxDistance largest distance of interest
+     * @return distance, or a value greater than <code>maxDistance</code> when
+     *         the distance is greater than <code>maxDistance</code>
+     */
+    public int distance(String s, String t, int maxDistance) {
+        String shorter = s;
+        String longer = t;
+        if (s.length() > t.length()) {
+            shorter = t;
+            longer = s;
+        }
+        int n = shorter.length();
+        int m = longer.length();
+        if (n == 0 || m - n > maxDistance) {
             return m;
         }
-        if (m == 0) {
-            return n;
+        if (n <= Long.SIZE) {
+            return bitParallelDistance(shorter, longer, maxDistance);
         }
-        d = new int[n + 1][m + 1];
-
-        // Step 2
+        return bandedDistance(shorter, longer, maxDistance);
+    }
 
-        for (i = 0; i <= n; i++) {
-            d[i][0] = i;
+    /**
+     * Gets the largest distance for which strings of the given maximum length
+     * still have the given proximity level.
+     * @param maxLength length of the longer string
+     * @param minProximity minimum proximity level
+     * @return largest distance, <code>-1</code> if none
+     */
+    private static int getMaxDistance(int maxLength, double minProximity) {
+        int maxDistance = (int) Math.max(-1, Math.min(maxLength, 
+                Math.floor((1d - minProximity) * maxLength)));
+        // guard against rounding, comparing as analyse does
+        while (maxDistance < maxLength && 1d - ((double) (maxDistance + 1) 
+                / maxLength) >= minProximity) {
+            maxDistance++;
         }
-
-        for (j = 0; j <= m; j++) {
-            d[0][j] = j;
+        while (maxDistance >= 0 && 1d - ((double) maxDistance 
+                / maxLength) < minProximity) {
+            maxDistance--;
         }
+        return maxDistance;
+    }
+    
+    /**
+     * Computes the distance with Myers' bit-parallel algorithm, one bit of a
+     * <code>long</code> per pattern character.
+     * @param pattern the shorter string, of at most 64 characters
+     * @param text the longer string
+     * @param maxDistance largest distance of interest
+     * @return distance, or a value greater than <code>maxDistance</code>
+     */
+    private static int bitParallelDistance(
+            String pattern, String text, int maxDistance) {
+        Buffers buffers = BUFFERS.get();
+        int n = pattern.length();
+        int m = text.length();
+        for (int i = 0; i < n; i++) {
+            buffers.addMaskBit(pattern.charAt(i), i);
+        }
+        
+        long lastBit = 1L << (n - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = n;
+        for (int j = 0; j < m; j++) {
+            long eq = buffers.getMask(text.charAt(j));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & lastBit) != 0) {
+                score++;
+            } else if ((mh & lastBit) != 0) {
+                score--;
+            }
+            // each remaining text character lowers the score by one at best
+            if (score - (m - j - 1) > maxDistance) {
+                score -= m - j - 1;
+                break;
+            }
+            ph = (ph << 1) | 1L;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        buffers.clearMasks();
+        return score;
+    }
 
-        // Step 3
-
-        for (i = 1; i <= n; i++) {
-
-            s_i = s.charAt(i - 1);
-
-            // Step 4
-
-            for (j = 1; j <= m; j++) {
-
-                t_j = t.charAt(j - 1);
-
-                // Step 5
-
-                if (s_i == t_j) {
-                    cost = 0;
-                } else {
-                    cost = 1;
+    /**
+     * Computes the distance with the classic dynamic programming algorithm,
+     * limited to the diagonal band of the matrix where distances do not
+     * exceed the given maximum.
+     * @param s the shorter string
+     * @param t the longer string
+     * @param maxDistance largest distance of interest
+     * @return distance, or a value greater than <code>maxDistance</code>
+     */
+    private static int bandedDistance(String s, String t, int maxDistance) {
+        int n = s.length();
+        int m = t.length();
+        int k = Math.min(maxDistance, m);
+        int outside = k + 1;
+        Buffers buffers = BUFFERS.get();
+        int[] prev = buffers.getRow(0, m + 1);
+        int[] cur = buffers.getRow(1, m + 1);
+        
+        for (int j = 0; j <= Math.min(m, k); j++) {
+            prev[j] = j;
+        }
+        if (k < m) {
+            prev[k + 1] = outside;
+        }
+        for (int i = 1; i <= n; i++) {
+            int lo = Math.max(1, i - k);
+            int hi = Math.min(m, i + k);
+            int rowMin;
+            if (lo == 1) {
+                cur[0] = i;
+                rowMin = i;
+            } else {
+                cur[lo - 1] = outside;
+                rowMin = outside;
+            }
+            char sChar = s.charAt(i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int d = prev[j - 1];
+                if (sChar != t.charAt(j - 1)) {
+                    d++;
+                }
+                d = Math.min(d, Math.min(prev[j], cur[j - 1]) + 1);
+                if (d > outside) {
+                    d = outside;
+                }
+                cur[j] = d;
+                if (d < rowMin) {
+                    rowMin = d;
                 }
-
-                // Step 6
-
-                d[i][j] = minimum(d[i - 1][j] + 1, d[i][j - 1] + 1,
-                        d[i - 1][j - 1] + cost);
-
             }
-
+            if (hi < m) {
+                cur[hi + 1] = outside;
+            }
+            if (rowMin > k) {
+                return outside;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
         }
+        return prev[m];
+    }
+    
+    /**
+     * Reusable work memory, so computing distances allocates nothing once
+     * buffers are large enough.
+     */
+    private static final class Buffers {
+        /** Characters of the mask table. */
+        private final char[] maskChars = new char[MASK_TABLE_SIZE];
+        /** Bit masks of pattern positions holding each character. */
+        private final long[] masks = new long[MASK_TABLE_SIZE];
+        /** Mask table slots in use. */
+        private final int[] usedSlots = new int[Long.SIZE];
+        /** Number of mask table slots in use. */
+        private int usedCount;
+        /** Dynamic programming rows. */
+        private final int[][] rows = new int[2][];
 
-        // Step 7
-
-        return d[n][m];
+        /**
+         * Sets a bit in the mask of a character.
+         * @param c the character
+         * @param bit bit to set
+         */
+        /*default*/ void addMaskBit(char c, int bit) {
+            int slot = (c ^ (c >>> 7)) & (MASK_TABLE_SIZE - 1);
+            while (masks[slot] != 0 && maskChars[slot] != c) {
+                slot = (slot + 1) & (MASK_TABLE_SIZE - 1);
+            }
+            if (masks[slot] == 0) {
+                maskChars[slot] = c;
+                usedSlots[usedCount++] = slot;
+            }
+            masks[slot] |= 1L << bit;
+        }
+        /**
+         * Gets the mask of a character.
+         * @param c the character
+         * @return bit mask, zero for characters not in the pattern
+         */
+        /*default*/ long getMask(char c) {
+            int slot = (c ^ (c >>> 7)) & (MASK_TABLE_SIZE - 1);
+            while (masks[slot] != 0) {
+                if (maskChars[slot] == c) {
+                    return masks[slot];
+                }
+                slot = (slot + 1) & (MASK_TABLE_SIZE - 1);
+            }
+            return 0L;
+        }
+        /**
+         * Clears all character masks.
+         */
+        /*default*/ void clearMasks() {
+            for (int i = 0; i < usedCount; i++) {
+                masks[usedSlots[i]] = 0L;
+            }
+            usedCount = 0;
+        }
+        /**
+         * Gets a dynamic programming row of at least the given length.
+         * @param index row index (0 or 1)
+         * @param length minimum length
+         * @return row
+         */
+        /*default*/ int[] getRow(int index, int length) {
+            if (rows[index] == null || rows[index].length < length) {
+                rows[index] = new int[length];
+            }
+            return rows[index];
+        }
     }
 }
@@ -37,4 +37,16 @@ public interface ProximityAnalyzer {
      * @return proximity level
      */
     double analyse(Object obj1, Object obj2);
+    
+    /**
+     * Analyses two objects and return the proximity level, when it is at
+     * least the given minimum.  Analysers may stop as soon as they know
+     * the proximity level is lower than the minimum.
+     * @param obj1 first object to analyse
+     * @param obj2 second object to analyse
+     * @param minProximity minimum proximity level of interest
+     * @return proximity level, or a level lower than 
+     *         <code>minProximity</code> if the proximity level is lower
+     */
+    double analyse(Object obj1, Object obj2, double minProximity);
 }
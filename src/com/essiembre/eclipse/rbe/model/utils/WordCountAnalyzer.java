@@ -20,23 +20,21 @@
  */
 package com.essiembre.eclipse.rbe.model.utils;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.regex.Pattern;
 
 /**
  * Compares two strings (case insensitive) and returns a proximity level
  * based on how many words there are, and how many words are the same 
- * in both strings.  Non-string objects are converted to strings using
- * the <code>toString()</code> method.
+ * in both strings.  Objects other than <code>AnalyzedText</code> are
+ * converted to strings using the <code>toString()</code> method.
  * @author Pascal Essiembre
  * @version $Author$ $Revision$ $Date$
  */
 public class WordCountAnalyzer implements ProximityAnalyzer {
 
     private static final ProximityAnalyzer INSTANCE = new WordCountAnalyzer();
-    private static final String WORD_SPLIT_PATTERN =
-            "\r\n|\r|\n|\\s"; //$NON-NLS-1$
+    private static final Pattern WORD_SPLIT_PATTERN =
+            Pattern.compile("\r\n|\r|\n|\\s"); //$NON-NLS-1$
 
     /**
      * Constructor.
@@ -59,28 +57,68 @@ public class WordCountAnalyzer implements ProximityAnalyzer {
      *         #analyse(java.lang.Object, java.lang.Object)
      */
     public double analyse(Object obj1, Object obj2) {
-        if (obj2 == null || obj2 == null) {
+        if (obj1 == null || obj2 == null) {
             return 0;
         }
         
-        Collection<String> str1 = new ArrayList<String>(
-                Arrays.asList(obj1.toString().split(WORD_SPLIT_PATTERN)));
-        Collection<String> str2 = new ArrayList<String>(
-                Arrays.asList(obj2.toString().split(WORD_SPLIT_PATTERN)));
+        String[] words1 = AnalyzedText.valueOf(obj1).getWords();
+        String[] words2 = AnalyzedText.valueOf(obj2).getWords();
         
-        int maxWords = Math.max(str1.size(), str2.size());
+        int maxWords = Math.max(words1.length, words2.length);
         if (maxWords == 0) {
             return 0;
         }
         
+        // both word arrays are sorted
         int matchedWords = 0;
-        for (String str : str1) {
-            if (str2.remove(str)) {
+        int i = 0;
+        int j = 0;
+        while (i < words1.length && j < words2.length) {
+            int comparison = words1[i].compareTo(words2[j]);
+            if (comparison == 0) {
                 matchedWords++;
+                i++;
+                j++;
+            } else if (comparison < 0) {
+                i++;
+            } else {
+                j++;
             }
         }
 
         return (double) matchedWords / (double) maxWords;
     }
 
+    /**
+     * @see com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer
+     *         #analyse(java.lang.Object, java.lang.Object, double)
+     */
+    public double analyse(Object obj1, Object obj2, double minProximity) {
+        if (obj1 == null || obj2 == null) {
+            return 0;
+        }
+        
+        AnalyzedText text1 = AnalyzedText.valueOf(obj1);
+        AnalyzedText text2 = AnalyzedText.valueOf(obj2);
+        int minWords = Math.min(text1.getWordCount(), text2.getWordCount());
+        int maxWords = Math.max(text1.getWordCount(), text2.getWordCount());
+        if (minProximity > 0 && maxWords > 0) {
+            // at best, all words of the shorter text match
+            if ((double) minWords / (double) maxWords < minProximity
+                    || (text1.getSignature() & text2.getSignature()) == 0) {
+                return 0;
+            }
+        }
+        return analyse(text1, text2);
+    }
+
+    /**
+     * Splits a string into the words compared by this analyzer.
+     * @param text string to split
+     * @return words
+     */
+    /*default*/ static String[] split(String text) {
+        return WORD_SPLIT_PATTERN.split(text);
+    }
+
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Index of the words found in strings associated with objects, for finding
+ * objects whose string may be close enough to a given one according to
+ * <code>WordCountAnalyzer</code>, without comparing against all of them.
+ * Objects are compared by identity.
+ * <p>
+ * For a string of <i>n</i> words to reach a given proximity, it must share
+ * at least <i>k</i> of its words with the other string.  Any <i>n - k + 1</i>
+ * of its words then contain at least one shared word, so only objects
+ * having one of the least frequent such words are candidates.  No object
+ * reaching the proximity is left out.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ * @param <T> type of indexed objects
+ */
+public class WordCountIndex<T> {
+
+    /** Indexed objects holding each word (key=word; value=objects). */
+    private final Map<String, Map<T, Boolean>> postings = 
+            new HashMap<String, Map<T, Boolean>>();
+    /** Distinct words of each indexed object (key=object). */
+    private final Map<T, String[]> objectWords = 
+            new IdentityHashMap<T, String[]>();
+    
+    /**
+     * Constructor.
+     */
+    public WordCountIndex() {
+        super();
+    }
+
+    /**
+     * Adds an object to this index, replacing any previous string for it.
+     * @param object object to index
+     * @param text string associated with the object
+     */
+    public void add(T object, AnalyzedText text) {
+        remove(object);
+        Map<String, Integer> counts = countWords(text);
+        String[] words = counts.keySet().toArray(new String[counts.size()]);
+        objectWords.put(object, words);
+        for (String word : words) {
+            Map<T, Boolean> objects = postings.get(word);
+            if (objects == null) {
+                objects = new IdentityHashMap<T, Boolean>();
+                postings.put(word, objects);
+            }
+            objects.put(object, Boolean.TRUE);
+        }
+    }
+    
+    /**
+     * Removes an object from this index.
+     * @param object object to remove
+     */
+    public void remove(T object) {
+        String[] words = objectWords.remove(object);
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Map<T, Boolean> objects = postings.get(word);
+            objects.remove(object);
+            if (objects.isEmpty()) {
+                postings.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Gets indexed objects whose string may have a proximity level with the
+     * given string of at least the given minimum, as computed by
+     * <code>WordCountAnalyzer</code>.  Returned objects still have to be
+     * analysed, but objects left out are guaranteed to be below the minimum.
+     * @param text string to find candidates for
+     * @param minProximity minimum proximity level
+     * @return candidate objects
+     */
+    public Collection<T> getCandidates(
+            AnalyzedText text, double minProximity) {
+        Map<String, Integer> counts = countWords(text);
+        int wordCount = text.getWordCount();
+        int minShared = getMinSharedWords(wordCount, minProximity);
+        if (minShared <= 0) {
+            return new ArrayList<T>(objectWords.keySet());
+        }
+        Collection<T> candidates = new ArrayList<T>();
+        if (minShared > wordCount) {
+            return candidates;
+        }
+        
+        // least frequent words first, until enough words are covered
+        String[] words = counts.keySet().toArray(new String[counts.size()]);
+        Arrays.sort(words, new Comparator<String>() {
+            public int compare(String word1, String word2) {
+                return getFrequency(word1) - getFrequency(word2);
+            }
+        });
+        Map<T, Boolean> found = new IdentityHashMap<T, Boolean>();
+        int wordsLeft = wordCount - minShared + 1;
+        for (int i = 0; i < words.length && wordsLeft > 0; i++) {
+            Map<T, Boolean> objects = postings.get(words[i]);
+            if (objects != null) {
+                for (T object : objects.keySet()) {
+                    if (found.put(object, Boolean.TRUE) == null) {
+                        candidates.add(object);
+                    }
+                }
+            }
+            wordsLeft -= counts.get(words[i]).intValue();
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the number of indexed objects holding the given word.
+     * @param word the word
+     * @return number of objects
+     */
+    /*default*/ int getFrequency(String word) {
+        Map<T, Boolean> objects = postings.get(word);
+        if (objects == null) {
+            return 0;
+        }
+        return objects.size();
+    }
+    
+    /**
+     * Gets the lowest number of words a string of the given word count
+     * must share with another to reach the given proximity level.  The 
+     * proximity is divided by the larger word count, which can only lower
+     * it, so this is a lower bound.
+     * @param wordCount number of words in the string
+     * @param minProximity minimum proximity level
+     * @return number of shared words
+     */
+    private static int getMinSharedWords(int wordCount, double minProximity) {
+        if (wordCount == 0) {
+            return minProximity > 0 ? 1 : 0;
+        }
+        int minShared = Math.max(0, (int) Math.ceil(minProximity * wordCount));
+        // guard against rounding, comparing as WordCountAnalyzer does
+        while (minShared > 0 && (double) (minShared - 1) 
+                / (double) wordCount >= minProximity) {
+            minShared--;
+        }
+        while (minShared <= wordCount && (double) minShared 
+                / (double) wordCount < minProximity) {
+            minShared++;
+        }
+        return minShared;
+    }
+    
+    /**
+     * Counts occurences of each word in a string.
+     * @param text the string
+     * @return word counts (key=word)
+     */
+    private static Map<String, Integer> countWords(AnalyzedText text) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String word : text.getWords()) {
+            Integer count = counts.get(word);
+            counts.put(word, Integer.valueOf(
+                    count == null ? 1 : count.intValue() + 1));
+        }
+        return counts;
+    }
+}
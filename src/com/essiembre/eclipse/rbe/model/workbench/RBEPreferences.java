@@ -20,9 +20,13 @@
  */
 package com.essiembre.eclipse.rbe.model.workbench;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.eclipse.core.runtime.Preferences;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.FormattingOptions;
+import com.essiembre.eclipse.rbe.model.bundle.ParsingOptions;
 
 /**
  * Application preferences, relevant to the resource bundle editor plugin.
@@ -37,8 +41,8 @@ import com.essiembre.eclipse.rbe.RBEPlugin;
 public final class RBEPreferences {
    
     /** Key group separator. */
-    public static final String KEY_GROUP_SEPARATOR =
-            "keyGroupSeparator"; //$NON-NLS-1$
+    public static final String KEY_GROUP_SEPARATOR = 
+            FormattingOptions.KEY_GROUP_SEPARATOR;
 
     /** Should key tree be hiearchical by default. */
     public static final String KEY_TREE_HIERARCHICAL =
@@ -48,7 +52,8 @@ public final class RBEPreferences {
             "keyTreeExpanded"; //$NON-NLS-1$
     
     /** Should "Generated by" line be added to files. */
-    public static final String SHOW_GENERATOR = "showGenerator"; //$NON-NLS-1$
+    public static final String SHOW_GENERATOR = 
+            FormattingOptions.SHOW_GENERATOR;
 
     /** Should Eclipse "nl" directory structure be supported. */
     public static final String SUPPORT_NL = "supportNL"; //$NON-NLS-1$
@@ -67,58 +72,59 @@ public final class RBEPreferences {
 
     /** Should equal signs be aligned. */
     public static final String ALIGN_EQUAL_SIGNS = 
-            "alignEqualSigns"; //$NON-NLS-1$
+            FormattingOptions.ALIGN_EQUAL_SIGNS;
     /** Should spaces be put around equal signs. */
     public static final String SPACES_AROUND_EQUAL_SIGNS = 
-            "spacesAroundEqualSigns"; //$NON-NLS-1$
+            FormattingOptions.SPACES_AROUND_EQUAL_SIGNS;
 
     /** Should keys be grouped. */
-    public static final String GROUP_KEYS = "groupKeys"; //$NON-NLS-1$
+    public static final String GROUP_KEYS = FormattingOptions.GROUP_KEYS;
     /** How many level deep should keys be grouped. */
     public static final String GROUP_LEVEL_DEEP = 
-            "groupLevelDeep"; //$NON-NLS-1$
+            FormattingOptions.GROUP_LEVEL_DEEP;
     /** How many line breaks between key groups. */
-    public static final String GROUP_LINE_BREAKS =
-            "groupLineBreaks"; //$NON-NLS-1$
+    public static final String GROUP_LINE_BREAKS = 
+            FormattingOptions.GROUP_LINE_BREAKS;
     /** Should equal signs be aligned within groups. */
     public static final String GROUP_ALIGN_EQUAL_SIGNS = 
-            "groupAlignEqualSigns"; //$NON-NLS-1$
+            FormattingOptions.GROUP_ALIGN_EQUAL_SIGNS;
 
     /** Should lines be wrapped. */
-    public static final String WRAP_LINES = "wrapLines"; //$NON-NLS-1$
+    public static final String WRAP_LINES = FormattingOptions.WRAP_LINES;
     /** Maximum number of character after which we should wrap. */
-    public static final String WRAP_CHAR_LIMIT = "wrapCharLimit"; //$NON-NLS-1$
+    public static final String WRAP_CHAR_LIMIT = 
+            FormattingOptions.WRAP_CHAR_LIMIT;
     /** Align subsequent lines with equal signs. */
     public static final String WRAP_ALIGN_EQUAL_SIGNS = 
-            "wrapAlignEqualSigns"; //$NON-NLS-1$
+            FormattingOptions.WRAP_ALIGN_EQUAL_SIGNS;
     /** Number of spaces to indent subsequent lines. */
     public static final String WRAP_INDENT_SPACES = 
-            "wrapIndentSpaces"; //$NON-NLS-1$
+            FormattingOptions.WRAP_INDENT_SPACES;
     
     /** Should unicode values be converted to their encoded equivalent. */
     public static final String CONVERT_UNICODE_TO_ENCODED = 
-            "convertUnicodeToEncoded"; //$NON-NLS-1$
+            FormattingOptions.CONVERT_UNICODE_TO_ENCODED;
     /** Should unicode values be converted to their encoded equivalent. */
     public static final String CONVERT_UNICODE_TO_ENCODED_UPPER = 
-            "convertUnicodeToEncodedUppercase"; //$NON-NLS-1$
+            FormattingOptions.CONVERT_UNICODE_TO_ENCODED_UPPER;
     /** Should encoded values be converted to their unicode equivalent. */
     public static final String CONVERT_ENCODED_TO_UNICODE = 
-            "convertEncodedToUnicode"; //$NON-NLS-1$
+            ParsingOptions.CONVERT_ENCODED_TO_UNICODE;
     
     /** Impose a given new line type. */
     public static final String FORCE_NEW_LINE_TYPE = 
-            "forceNewLineType"; //$NON-NLS-1$
+            FormattingOptions.FORCE_NEW_LINE_TYPE;
     /** How new lines are represented in resource bundle. */
-    public static final String NEW_LINE_TYPE = "newLineType"; //$NON-NLS-1$
+    public static final String NEW_LINE_TYPE = FormattingOptions.NEW_LINE_TYPE;
     /** Should new lines character produce a line break in properties files. */
-    public static final String NEW_LINE_NICE = "newLineNice"; //$NON-NLS-1$
+    public static final String NEW_LINE_NICE = FormattingOptions.NEW_LINE_NICE;
     
     /** New Line Type: UNIX. */
-    public static final int NEW_LINE_UNIX = 0;
+    public static final int NEW_LINE_UNIX = FormattingOptions.NEW_LINE_UNIX;
     /** New Line Type: Windows. */
-    public static final int NEW_LINE_WIN = 1;
+    public static final int NEW_LINE_WIN = FormattingOptions.NEW_LINE_WIN;
     /** New Line Type: Mac. */
-    public static final int NEW_LINE_MAC = 2;
+    public static final int NEW_LINE_MAC = FormattingOptions.NEW_LINE_MAC;
 
     /** Report missing values. */
     public static final String REPORT_MISSING_VALUES = 
@@ -145,7 +151,7 @@ public final class RBEPreferences {
 
     /** Keep empty fields. */
     public static final String KEEP_EMPTY_FIELDS = 
-            "keepEmptyFields"; //$NON-NLS-1$
+            FormattingOptions.KEEP_EMPTY_FIELDS;
     
     public static final String       MIN_HEIGHT                       = "minHeight";    //$NON-NLS-1$                               //$NON-NLS-1$
     public static final String       AUTO_ADJUST                      = "autoAdjust";   //$NON-NLS-1$                              //$NON-NLS-1$
@@ -155,6 +161,21 @@ public final class RBEPreferences {
     private static final Preferences PREFS = 
             RBEPlugin.getDefault().getPluginPreferences();
     
+    /** Number of preference changes so far. */
+    private static final AtomicInteger CHANGE_COUNT = new AtomicInteger();
+    /** Formatting options snapshot, or <code>null</code>. */
+    private static volatile Snapshot<FormattingOptions> formattingOptions;
+    /** Parsing options snapshot, or <code>null</code>. */
+    private static volatile Snapshot<ParsingOptions> parsingOptions;
+    static {
+        PREFS.addPropertyChangeListener(
+                new Preferences.IPropertyChangeListener() {
+            public void propertyChange(Preferences.PropertyChangeEvent event) {
+                CHANGE_COUNT.incrementAndGet();
+            }
+        });
+    }
+    
     /**
      * Constructor.
      */
@@ -438,4 +459,58 @@ public final class RBEPreferences {
        return PREFS.getInt(MIN_HEIGHT);
     }
 
+    /**
+     * Gets a snapshot of the preferences used when generating file.  The
+     * same snapshot is returned until preferences change.
+     * @return formatting options
+     */
+    public static FormattingOptions getFormattingOptions() {
+        int changeCount = CHANGE_COUNT.get();
+        Snapshot<FormattingOptions> snapshot = formattingOptions;
+        if (snapshot == null || snapshot.changeCount != changeCount) {
+            // read after the change count, so a change made meanwhile
+            // makes this snapshot outdated rather than lost
+            snapshot = new Snapshot<FormattingOptions>(
+                    changeCount, new FormattingOptions(PREFS));
+            formattingOptions = snapshot;
+        }
+        return snapshot.options;
+    }
+
+    /**
+     * Gets a snapshot of the preferences used when reading file.  The
+     * same snapshot is returned until preferences change.
+     * @return parsing options
+     */
+    public static ParsingOptions getParsingOptions() {
+        int changeCount = CHANGE_COUNT.get();
+        Snapshot<ParsingOptions> snapshot = parsingOptions;
+        if (snapshot == null || snapshot.changeCount != changeCount) {
+            snapshot = new Snapshot<ParsingOptions>(
+                    changeCount, new ParsingOptions(PREFS));
+            parsingOptions = snapshot;
+        }
+        return snapshot.options;
+    }
+
+    /**
+     * Options read from preferences, along with the number of preference
+     * changes made before reading them.
+     * @param <T> type of options
+     */
+    private static final class Snapshot<T> {
+        /*default*/ final int changeCount;
+        /*default*/ final T options;
+        /**
+         * Constructor.
+         * @param changeCount number of preference changes before reading
+         * @param options options read
+         */
+        /*default*/ Snapshot(int changeCount, T options) {
+            super();
+            this.changeCount = changeCount;
+            this.options = options;
+        }
+    }
+
 }
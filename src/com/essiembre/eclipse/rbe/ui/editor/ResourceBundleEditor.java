@@ -221,15 +221,9 @@ public class ResourceBundleEditor extends MultiPageEditorPart
      */
     @Override
     public void doSave(IProgressMonitor monitor) {
-        KeyTree keyTree = resourceMediator.getKeyTree();
-        String key = keyTree.getSelectedKey();
-
         i18nPage.refreshEditorOnChanges();
+        // the key tree is kept up to date from bundle changes already
         resourceMediator.save(monitor);
-        
-        keyTree.setUpdater(keyTree.getUpdater());
-        if (key != null)
-            keyTree.selectKey(key);
     }
     
     /**
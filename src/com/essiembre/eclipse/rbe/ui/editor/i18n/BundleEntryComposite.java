@@ -28,6 +28,10 @@ import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.resource.FontRegistry;
 import org.eclipse.jface.text.Document;
@@ -63,10 +67,9 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
-import com.essiembre.eclipse.rbe.model.bundle.visitors.DuplicateValuesVisitor;
-import com.essiembre.eclipse.rbe.model.bundle.visitors.SimilarValuesVisitor;
 import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
 import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
 import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
@@ -83,6 +86,10 @@ import com.essiembre.eclipse.rbe.ui.editor.resources.SourceEditor;
  */
 public class BundleEntryComposite extends Composite {
 
+    /** Delay before looking for duplicate and similar values, so quickly
+     *  moving through keys does not start a search for each of them. */
+    private static final long FIND_VALUES_DELAY = 100;
+
    /*default*/ final ResourceManager resourceManager;
     /*default*/ final Locale locale;
     /*default*/ final I18nPage page;
@@ -101,8 +108,9 @@ public class BundleEntryComposite extends Composite {
     /*default*/ String activeKey;
     /*default*/ String textBeforeUpdate;
 
-    /*default*/ DuplicateValuesVisitor duplVisitor;
-    /*default*/ SimilarValuesVisitor similarVisitor;
+    /*default*/ Collection<BundleEntry> duplicates;
+    /*default*/ Collection<BundleEntry> similars;
+    private final FindValuesJob findValuesJob;
     
    
     private FocusListener internalFocusListener = new FocusListener() {
@@ -153,6 +161,8 @@ public class BundleEntryComposite extends Composite {
         setLayout(gridLayout);
         GridData gd = new GridData(GridData.FILL_BOTH);
         setLayoutData(gd);
+        
+        findValuesJob = new FindValuesJob();
     }
 
     /**
@@ -185,6 +195,7 @@ public class BundleEntryComposite extends Composite {
      */
     @Override
     public void dispose() {
+        findValuesJob.cancel();
         super.dispose();
         boldFont.dispose();
         smallFont.dispose();
@@ -223,6 +234,8 @@ public class BundleEntryComposite extends Composite {
      * @param key key used to grab value
      */
     public void refresh(String key) {
+        boolean keyChanged = (key == null ? activeKey != null 
+                : !key.equals(activeKey));
         activeKey = key;
         BundleGroup bundleGroup = resourceManager.getBundleGroup();
         StyledText textBox = textViewer.getTextWidget();
@@ -243,58 +256,71 @@ public class BundleEntryComposite extends Composite {
             commentedCheckbox.setEnabled(!sourceEditor.isReadOnly());
             textBox.setEnabled(!sourceEditor.isReadOnly());
             gotoButton.setEnabled(true);
-            if (RBEPreferences.getReportDuplicateValues()) {
-                findDuplicates(bundleEntry);
-            } else {
-                duplVisitor = null;
-            }
-            if (RBEPreferences.getReportSimilarValues()) {
-                findSimilar(bundleEntry);
-            } else {
-                similarVisitor = null;
-            }
+            findValues(bundleGroup.getBundle(locale), bundleEntry, keyChanged);
         } else {
             commentedCheckbox.setSelection(false);
             commentedCheckbox.setEnabled(false);
             document.set("");
             textBox.setEnabled(false);
             gotoButton.setEnabled(false);
-            duplButton.setVisible(false);
-            simButton.setVisible(false);
+            findValues(null, null, true);
         }
         
         textViewer.setDocument(document);		
         resetCommented();
     }
 
-    private void findSimilar(BundleEntry bundleEntry) {
-        ProximityAnalyzer analyzer;
-        if (RBEPreferences.getReportSimilarValuesLevensthein()) {
-            analyzer = LevenshteinDistanceAnalyzer.getInstance();
-        } else {
-            analyzer = WordCountAnalyzer.getInstance();
+    /**
+     * Starts looking in the background for values duplicate or similar to
+     * the given entry value, as per preferences.  Any search still running
+     * is cancelled.
+     * @param bundle bundle to search, or <code>null</code>
+     * @param bundleEntry bundle entry to search values for, or
+     *        <code>null</code>
+     * @param keyChanged whether the key changed since the last search, in
+     *        which case last search results are cleared right away
+     */
+    private void findValues(
+            Bundle bundle, BundleEntry bundleEntry, boolean keyChanged) {
+        findValuesJob.cancel();
+        if (keyChanged) {
+            setFoundValues(null, null);
         }
-        BundleGroup bundleGroup = resourceManager.getBundleGroup();
-        if (similarVisitor == null) {
-            similarVisitor = new SimilarValuesVisitor();
+        boolean reportDuplicates = RBEPreferences.getReportDuplicateValues();
+        ProximityAnalyzer analyzer = null;
+        if (RBEPreferences.getReportSimilarValues()) {
+            if (RBEPreferences.getReportSimilarValuesLevensthein()) {
+                analyzer = LevenshteinDistanceAnalyzer.getInstance();
+            } else {
+                analyzer = WordCountAnalyzer.getInstance();
+            }
         }
-        similarVisitor.setProximityAnalyzer(analyzer);
-        similarVisitor.clear();
-        bundleGroup.getBundle(locale).accept(similarVisitor, bundleEntry);
-        if (duplVisitor != null) {
-            similarVisitor.getSimilars().removeAll(duplVisitor.getDuplicates());
+        if (bundle == null || bundleEntry == null
+                || !reportDuplicates && analyzer == null) {
+            findValuesJob.setSearch(null);
+            setFoundValues(null, null);
+            return;
         }
-        simButton.setVisible(similarVisitor.getSimilars().size() > 0);
+        findValuesJob.setSearch(new ValuesSearch(bundle, bundleEntry, 
+                reportDuplicates, analyzer, 
+                RBEPreferences.getReportSimilarValuesPrecision()));
+        findValuesJob.schedule(FIND_VALUES_DELAY);
     }
 
-    private void findDuplicates(BundleEntry bundleEntry) {
-        BundleGroup bundleGroup = resourceManager.getBundleGroup();
-        if (duplVisitor == null) {
-            duplVisitor = new DuplicateValuesVisitor();
-        }
-        duplVisitor.clear();
-        bundleGroup.getBundle(locale).accept(duplVisitor, bundleEntry);
-        duplButton.setVisible(duplVisitor.getDuplicates().size() > 0);
+    /**
+     * Sets found duplicate and similar values, showing the matching buttons
+     * when there are any.
+     * @param foundDuplicates entries with duplicate values, or 
+     *        <code>null</code>
+     * @param foundSimilars entries with similar values, or 
+     *        <code>null</code>
+     */
+    /*default*/ void setFoundValues(Collection<BundleEntry> foundDuplicates,
+            Collection<BundleEntry> foundSimilars) {
+        duplicates = foundDuplicates;
+        similars = foundSimilars;
+        duplButton.setVisible(duplicates != null && duplicates.size() > 0);
+        simButton.setVisible(similars != null && similars.size() > 0);
     }
 
 
@@ -339,7 +365,7 @@ public class BundleEntryComposite extends Composite {
                         "dialog.similar.body", activeKey, //$NON-NLS-1$
                         UIUtils.getDisplayName(locale));
                 body += "\n\n"; //$NON-NLS-1$
-                for (BundleEntry bundleEntry : similarVisitor.getSimilars()) {
+                for (BundleEntry bundleEntry : similars) {
                     body += "        " //$NON-NLS-1$
                         + bundleEntry.getKey()
                         + "\n"; //$NON-NLS-1$
@@ -367,7 +393,7 @@ public class BundleEntryComposite extends Composite {
                         "dialog.identical.body", activeKey, //$NON-NLS-1$
                         UIUtils.getDisplayName(locale));
                 body += "\n\n"; //$NON-NLS-1$
-                for (BundleEntry bundleEntry : duplVisitor.getDuplicates()) {
+                for (BundleEntry bundleEntry : duplicates) {
                     body += "        " //$NON-NLS-1$
                         + bundleEntry.getKey()
                         + "\n"; //$NON-NLS-1$
@@ -846,6 +872,117 @@ public class BundleEntryComposite extends Composite {
         }
         return SWT.LEFT_TO_RIGHT;
     }
+
+    /**
+     * What to search values for, as of a given refresh.
+     */
+    private static final class ValuesSearch {
+        /*default*/ final Bundle bundle;
+        /*default*/ final BundleEntry entry;
+        /*default*/ final boolean reportDuplicates;
+        /*default*/ final ProximityAnalyzer analyzer;
+        /*default*/ final double precision;
+
+        /**
+         * Constructor.
+         * @param bundle bundle to search
+         * @param entry bundle entry to search values for
+         * @param reportDuplicates whether to search duplicate values
+         * @param analyzer analyzer for similar values, or <code>null</code>
+         *        not to search similar values
+         * @param precision minimum proximity level of similar values
+         */
+        /*default*/ ValuesSearch(Bundle bundle, BundleEntry entry, 
+                boolean reportDuplicates, ProximityAnalyzer analyzer, 
+                double precision) {
+            super();
+            this.bundle = bundle;
+            this.entry = entry;
+            this.reportDuplicates = reportDuplicates;
+            this.analyzer = analyzer;
+            this.precision = precision;
+        }
+    }
+
+    /**
+     * Job searching duplicate and similar values in the background, and
+     * showing them if its search is still the latest one.
+     */
+    private class FindValuesJob extends Job {
+
+        /** Display to show found values on. */
+        private final Display display;
+        /** Latest search, or <code>null</code>. */
+        private volatile ValuesSearch search;
+
+        /**
+         * Constructor.
+         */
+        FindValuesJob() {
+            super(RBEPlugin.getString("value.find.job")); //$NON-NLS-1$
+            setPriority(INTERACTIVE);
+            display = getDisplay();
+        }
+
+        /**
+         * Sets the latest search.
+         * @param search search to run, or <code>null</code>
+         */
+        void setSearch(ValuesSearch search) {
+            this.search = search;
+        }
+
+        /**
+         * @see org.eclipse.core.runtime.jobs.Job#run(
+         *         org.eclipse.core.runtime.IProgressMonitor)
+         */
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            final ValuesSearch jobSearch = search;
+            if (jobSearch == null) {
+                return Status.OK_STATUS;
+            }
+            Collection<BundleEntry> foundDuplicates = null;
+            Collection<BundleEntry> foundSimilars = null;
+            monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+            try {
+                if (jobSearch.reportDuplicates) {
+                    foundDuplicates = 
+                            jobSearch.bundle.getDuplicates(jobSearch.entry);
+                }
+                if (jobSearch.analyzer != null) {
+                    foundSimilars = jobSearch.bundle.getSimilars(
+                            jobSearch.entry, jobSearch.analyzer, 
+                            jobSearch.precision, monitor);
+                    if (foundSimilars == null) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    if (foundDuplicates != null) {
+                        foundSimilars.removeAll(foundDuplicates);
+                    }
+                }
+            } finally {
+                monitor.done();
+            }
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            if (display.isDisposed()) {
+                return Status.OK_STATUS;
+            }
+            final Collection<BundleEntry> jobDuplicates = foundDuplicates;
+            final Collection<BundleEntry> jobSimilars = foundSimilars;
+            display.asyncExec(new Runnable() {
+                public void run() {
+                    if (isDisposed() || search != jobSearch) {
+                        return;
+                    }
+                    setFoundValues(jobDuplicates, jobSimilars);
+                }
+            });
+            return Status.OK_STATUS;
+        }
+    }
 }
 
 
@@ -43,16 +43,20 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.ui.progress.IWorkbenchSiteProgressService;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.SortedKeySet;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeLayout;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeComposite;
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeLayoutJob;
 import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
 
 /**
@@ -81,10 +85,13 @@ public class I18nPage extends ScrolledComposite {
      * @param parent parent component.
      * @param style  style to apply to this component
      * @param resourceMediator resource manager
+     * @param progressService progress service of the editor site, or
+     *        <code>null</code>
      */
     public I18nPage(
             Composite parent, int style, 
-            final ResourceManager resourceMediator) {
+            final ResourceManager resourceMediator,
+            IWorkbenchSiteProgressService progressService) {
         super(parent, style);
         this.resourceMediator = resourceMediator; 
 
@@ -92,6 +99,15 @@ public class I18nPage extends ScrolledComposite {
             keysComposite = null;
             editingComposite = this;
             createEditingPart(this);            
+            // the key tree composite lays out the key tree otherwise
+            final KeyTree keyTree = resourceMediator.getKeyTree();
+            new KeyTreeLayoutJob(
+                    keyTree, keyTree.getUpdater(), getDisplay()) {
+                @Override
+                protected void setLayout(KeyTreeLayout layout) {
+                    keyTree.setLayout(layout);
+                }
+            }.start();
         } else {
                     // Create screen        
             SashForm sashForm = new SashForm(this, SWT.NONE);
@@ -100,7 +116,8 @@ public class I18nPage extends ScrolledComposite {
     
             keysComposite = new KeyTreeComposite(
                         sashForm, 
-                        resourceMediator.getKeyTree());
+                        resourceMediator.getKeyTree(),
+                        progressService);
             keysComposite.getTreeViewer().addSelectionChangedListener(localBehaviour);
             
             editingComposite = new ScrolledComposite(sashForm, SWT.V_SCROLL | SWT.H_SCROLL);
@@ -425,7 +442,7 @@ public class I18nPage extends ScrolledComposite {
                }
             }
             BundleGroup bundleGroup = resourceMediator.getBundleGroup();
-            ArrayList<String> keys = new ArrayList<String>(bundleGroup.getKeys());
+            SortedKeySet keys = bundleGroup.getKeys();
             String activeKey = lastActiveEntry != null ? lastActiveEntry.activeKey : keys.get(0);
             int activeKeyIndex = Math.max(keys.indexOf(activeKey), 0);
 
@@ -4,6 +4,7 @@ import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.text.IFindReplaceTarget;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.ui.progress.IWorkbenchSiteProgressService;
 import org.eclipse.ui.texteditor.AbstractTextEditor;
 import org.eclipse.ui.texteditor.FindNextAction;
 import org.eclipse.ui.texteditor.FindReplaceAction;
@@ -33,7 +34,11 @@ public class I18nPageEditor extends AbstractTextEditor {
    
    @Override
    public void createPartControl( Composite parent ) {
-      _i18nPage = new I18nPage(parent, SWT.NONE, _resourceMediator);
+      IWorkbenchSiteProgressService progressService =
+            (IWorkbenchSiteProgressService) getSite().getService(
+                  IWorkbenchSiteProgressService.class);
+      _i18nPage = new I18nPage(
+            parent, SWT.NONE, _resourceMediator, progressService);
       
       _findReplaceAction = new FindReplaceAction(RBEPlugin.getDefault().getResourceBundle(), null, _i18nPage.getShell(), _i18nPage.getReplaceTarget()) {
          @Override
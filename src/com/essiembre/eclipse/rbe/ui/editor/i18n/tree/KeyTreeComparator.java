@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Sorts key tree viewer items the same way the key tree does.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class KeyTreeComparator extends ViewerComparator {
+
+    /**
+     * Constructor.
+     */
+    public KeyTreeComparator() {
+        super();
+    }
+
+    /**
+     * @see ViewerComparator#compare(Viewer, Object, Object)
+     */
+    @Override
+    public int compare(Viewer viewer, Object e1, Object e2) {
+        return ((KeyTreeItem) e1).compareTo((KeyTreeItem) e2);
+    }
+}
@@ -22,7 +22,12 @@ package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
@@ -45,16 +50,20 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.progress.IWorkbenchSiteProgressService;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeFilter;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeLayout;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
-import com.essiembre.eclipse.rbe.model.tree.visitors.KeysStartingWithVisitor;
+import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
 
@@ -65,6 +74,9 @@ import com.essiembre.eclipse.rbe.ui.UIUtils;
  */
 public class KeyTreeComposite extends Composite {
 
+    /** Milliseconds to wait for more typing before filtering keys. */
+    private static final long FILTER_DELAY = 200;
+
     /** Image for tree mode toggle button. */
     private Image treeToggleImage;
     /** Image for flat mode toggle button. */
@@ -75,6 +87,10 @@ public class KeyTreeComposite extends Composite {
     
     /** Key Tree Viewer. */
     /*default*/ TreeViewer treeViewer;
+    /** TreeViewer content provider. */
+    private KeyTreeContentProvider contentProvider;
+    /** Whether the tree viewer is virtual. */
+    private boolean virtual;
     /** TreeViewer label provider. */
     protected KeyTreeLabelProvider labelProvider;
     
@@ -95,15 +111,23 @@ public class KeyTreeComposite extends Composite {
     private TreeViewerContributor  treeviewerContributor;
     
     private Text filterTextBox;
+    /** Job filtering keys in the background. */
+    private FilterJob filterJob;
+    /** Shows the editor busy while filtering (may be <code>null</code>). */
+    private final IWorkbenchSiteProgressService progressService;
     
     /**
      * Constructor.
      * @param parent parent composite
      * @param keyTree key tree
+     * @param progressService progress service of the editor site, or
+     *        <code>null</code>
      */
-    public KeyTreeComposite(Composite parent, final KeyTree keyTree) {
+    public KeyTreeComposite(Composite parent, final KeyTree keyTree,
+            IWorkbenchSiteProgressService progressService) {
         super(parent, SWT.BORDER);
         this.keyTree = keyTree;
+        this.progressService = progressService;
 
         treeToggleImage = UIUtils.getImage(UIUtils.IMAGE_LAYOUT_HIERARCHICAL);
         flatToggleImage = UIUtils.getImage(UIUtils.IMAGE_LAYOUT_FLAT);
@@ -114,6 +138,8 @@ public class KeyTreeComposite extends Composite {
         createTopSection();
         createMiddleSection();
         createBottomSection();
+        // initial layout, built in the background
+        changeLayout(keyTree.getUpdater(), keyTreeHierarchical);
     }
 
     /**
@@ -159,6 +185,7 @@ public class KeyTreeComposite extends Composite {
      */
     @Override
     public void dispose() {
+       filterJob.cancel();
        super.dispose();
 
        waitCursor.dispose();
@@ -179,7 +206,7 @@ public class KeyTreeComposite extends Composite {
         String key = selectedItem.getId();
         String msgHead = null;
         String msgBody = null;
-        if (selectedItem.getChildren().size() == 0) {
+        if (selectedItem.isLeaf()) {
             msgHead = RBEPlugin.getString(
                     "dialog.delete.head.single"); //$NON-NLS-1$
             msgBody = RBEPlugin.getString(
@@ -200,8 +227,13 @@ public class KeyTreeComposite extends Composite {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                bundleGroup.removeKey(item.getId());
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    bundleGroup.removeKey(item.getId());
+                }
+            } finally {
+                bundleGroup.commitBatch();
             }
         }
     }    
@@ -225,14 +257,25 @@ public class KeyTreeComposite extends Composite {
         filterTextBox.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
         filterTextBox.addModifyListener(new ModifyListener() {
             public void modifyText(ModifyEvent e) {
-                keyTree.filterKeyItems(filterTextBox.getText());
-                treeViewer.getControl().setRedraw(false);
-                treeViewer.refresh();
-                if(!filterTextBox.getText().isEmpty())
-                   treeViewer.expandAll();
-                treeViewer.getControl().setRedraw(true);
+                String filter = filterTextBox.getText();
+                filterJob.cancel();
+                if (filter.isEmpty()) {
+                    // showing all keys is expected right away (e.g. on find)
+                    filterJob.setMatches(null);
+                    keyTree.resetFilter();
+                    refreshFilteredTree();
+                } else {
+                    filterJob.setMatches(keyTree.newFilterMatches(filter));
+                    if (progressService != null) {
+                        progressService.schedule(
+                                filterJob, FILTER_DELAY, true);
+                    } else {
+                        filterJob.schedule(FILTER_DELAY);
+                    }
+                }
             }
         });
+        filterJob = new FilterJob();
         
         Composite topRightComposite = new Composite(topComposite, SWT.NONE);
         gridLayout = new GridLayout(2, false);
@@ -270,19 +313,9 @@ public class KeyTreeComposite extends Composite {
                     flatModeButton.setSelection(false);
                     flatModeButton.setEnabled(true);
                     hierModeButton.setEnabled(false);
-                    setCursor(waitCursor);
-                    setVisible(false);
-                    keyTree.setUpdater(new GroupedKeyTreeUpdater(RBEPreferences.getKeyGroupSeparator()));
+                    changeLayout(new GroupedKeyTreeUpdater(RBEPreferences.getKeyGroupSeparator()), true);
 //                    treeviewerContributor.getMenuItem(TreeViewerContributor.MENU_EXPAND).setEnabled(true);
 //                    treeviewerContributor.getMenuItem(TreeViewerContributor.MENU_COLLAPSE).setEnabled(true);
-                    if (RBEPreferences.getKeyTreeExpanded()) {
-                       treeViewer.getControl().setRedraw(false);
-                       treeViewer.expandAll();
-                       treeViewer.getControl().setRedraw(true);    
-                    }
-                    selectKeyTreeItem(addTextBox.getText());
-                    setVisible(true);
-                    setCursor(defaultCursor);
                 }
             }
         });
@@ -293,19 +326,45 @@ public class KeyTreeComposite extends Composite {
                     hierModeButton.setSelection(false);
                     hierModeButton.setEnabled(true);
                     flatModeButton.setEnabled(false);
-                    setCursor(waitCursor);
-                    setVisible(false);
-                    keyTree.setUpdater(new FlatKeyTreeUpdater());
+                    changeLayout(new FlatKeyTreeUpdater(), false);
 //                    treeviewerContributor.getMenuItem(TreeViewerContributor.MENU_EXPAND).setEnabled(false);
 //                    treeviewerContributor.getMenuItem(TreeViewerContributor.MENU_COLLAPSE).setEnabled(false);
-                    selectKeyTreeItem(addTextBox.getText());
-                    setVisible(true);
-                    setCursor(defaultCursor);                    
                 }
             }
         });
     }
     
+    /**
+     * Lays out the key tree with the given updater.  The layout is built in
+     * the background, unless already built.
+     * @param updater key tree updater
+     * @param hierarchical whether the layout groups keys
+     */
+    /*default*/ void changeLayout(
+            KeyTreeUpdater updater, final boolean hierarchical) {
+        setCursor(waitCursor);
+        new KeyTreeLayoutJob(keyTree, updater, getDisplay()) {
+            @Override
+            protected void setLayout(KeyTreeLayout layout) {
+                if (isDisposed()) {
+                    return;
+                }
+                setVisible(false);
+                if (keyTree.setLayout(layout)) {
+                    if (hierarchical && RBEPreferences.getKeyTreeExpanded() 
+                            && !virtual) {
+                        treeViewer.getControl().setRedraw(false);
+                        treeViewer.expandAll();
+                        treeViewer.getControl().setRedraw(true);    
+                    }
+                    selectKeyTreeItem(addTextBox.getText());
+                }
+                setVisible(true);
+                setCursor(defaultCursor);
+            }
+        }.start();
+    }
+
     /**
      * Creates the middle (tree) section of this composite.
      */
@@ -317,15 +376,22 @@ public class KeyTreeComposite extends Composite {
         gridData.horizontalAlignment = GridData.FILL;
         gridData.grabExcessHorizontalSpace = true;
 
-        treeViewer = new TreeViewer(this, SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
-        treeViewer.setContentProvider(new KeyTreeContentProvider());
+        virtual = LazyKeyTreeContentProvider.isVirtual(keyTree);
+        if (virtual) {
+            treeViewer = new TreeViewer(this, SWT.SINGLE | SWT.BORDER 
+                    | SWT.V_SCROLL | SWT.H_SCROLL | SWT.VIRTUAL);
+            contentProvider = new LazyKeyTreeContentProvider();
+        } else {
+            treeViewer = new TreeViewer(this, SWT.SINGLE | SWT.BORDER 
+                    | SWT.V_SCROLL | SWT.H_SCROLL);
+            contentProvider = new KeyTreeContentProvider();
+            treeViewer.setComparator(new KeyTreeComparator());
+        }
+        treeViewer.setContentProvider(contentProvider);
         labelProvider = new KeyTreeLabelProvider();
         treeViewer.setLabelProvider(labelProvider);
         treeViewer.setUseHashlookup(true);
         treeViewer.setInput(keyTree);
-        if (RBEPreferences.getKeyTreeExpanded()) {
-            treeViewer.expandAll();
-        }
         treeViewer.getTree().setLayoutData(gridData);      
         treeViewer.getTree().addKeyListener(new KeyAdapter() {
             @Override
@@ -442,10 +508,9 @@ public class KeyTreeComposite extends Composite {
                     addButton.setEnabled(true);
                 }
                 if ( key.length() > 0 && !key.equals(getSelectedKey()) ) {
-                   KeysStartingWithVisitor visitor = new KeysStartingWithVisitor();
-                   keyTree.accept(visitor, key);
-                   KeyTreeItem item = visitor.getKeyTreeItem();
-                   if ( item != null ) {
+                   List<KeyTreeItem> items = keyTree.findKeysWithPrefix(key, 1);
+                   if ( !items.isEmpty() ) {
+                      KeyTreeItem item = items.get(0);
                       syncAddTextBox = false;
                       selectKeyTreeItem(item);
      
@@ -481,9 +546,85 @@ public class KeyTreeComposite extends Composite {
      */
     /*default*/ void selectKeyTreeItem(KeyTreeItem item) {
         if (item != null) {
+            // item may just have been added
+            contentProvider.flush();
             treeViewer.setSelection(new StructuredSelection(item), true);
         }
     }
+
+    /**
+     * Refreshes the tree viewer after the key filter changed.
+     */
+    /*default*/ void refreshFilteredTree() {
+        treeViewer.getControl().setRedraw(false);
+        treeViewer.refresh();
+        if (!keyTree.getFilter().isEmpty() && !virtual) {
+            treeViewer.expandAll();
+        }
+        treeViewer.getControl().setRedraw(true);
+    }
+
+    /**
+     * Finds the keys matching the filter text in the background, then
+     * applies them on the UI thread unless the filter text changed since.
+     */
+    private class FilterJob extends Job {
+
+        /** Display to apply matches on. */
+        private final Display display;
+        /** Matches of the latest filter text, or <code>null</code>. */
+        private volatile KeyTreeFilter.Matches matches;
+
+        /**
+         * Constructor.
+         */
+        FilterJob() {
+            super(RBEPlugin.getString("key.filter.job")); //$NON-NLS-1$
+            setPriority(INTERACTIVE);
+            display = getDisplay();
+        }
+
+        /**
+         * Sets the matches of the latest filter text.
+         * @param matches matches to find, or <code>null</code>
+         */
+        void setMatches(KeyTreeFilter.Matches matches) {
+            this.matches = matches;
+        }
+
+        /**
+         * @see org.eclipse.core.runtime.jobs.Job#run(
+         *         org.eclipse.core.runtime.IProgressMonitor)
+         */
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            final KeyTreeFilter.Matches jobMatches = matches;
+            if (jobMatches == null) {
+                return Status.OK_STATUS;
+            }
+            monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+            try {
+                if (!jobMatches.find(monitor)) {
+                    return Status.CANCEL_STATUS;
+                }
+            } finally {
+                monitor.done();
+            }
+            if (display.isDisposed()) {
+                return Status.OK_STATUS;
+            }
+            display.asyncExec(new Runnable() {
+                public void run() {
+                    if (isDisposed() || matches != jobMatches) {
+                        return;
+                    }
+                    keyTree.filterKeyItems(jobMatches);
+                    refreshFilteredTree();
+                }
+            });
+            return Status.OK_STATUS;
+        }
+    }
     
 //	public KeyTreeItem getNextKeyTreeItem() {
 //		// Either find the next sibbling
@@ -20,11 +20,19 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
@@ -32,7 +40,12 @@ import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 
 /**
- * Content provider for key tree viewer.
+ * Content provider for key tree viewer.  Key tree changes are applied to
+ * the viewer on the affected items only, all at once after the UI thread
+ * is done processing current events.  Viewers using this provider must
+ * sort items the same way the key tree does (see
+ * {@link KeyTreeComparator}), for added items to be inserted at the
+ * right place.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
  * @version $Author$ $Revision$ $Date$
  */
@@ -41,8 +54,33 @@ public class KeyTreeContentProvider implements
 
     /** Represents empty objects. */
     private static Object[] EMPTY_ARRAY = new Object[0];
+    /** Number of pending changes beyond which the whole tree is refreshed. */
+    private static final int MAX_PENDING_CHANGES = 500;
+
+    /** Change type: item added. */
+    private static final int CHANGE_ADD = 0;
+    /** Change type: item removed. */
+    private static final int CHANGE_REMOVE = 1;
+    /** Change type: item modified. */
+    private static final int CHANGE_MODIFY = 2;
+    /** Change type: item selected. */
+    private static final int CHANGE_SELECT = 3;
+
     /** Viewer this provided act upon. */
     protected TreeViewer treeViewer;
+    /** Changes not yet applied to the viewer, in order received. */
+    private final List<TreeChange> pendingChanges =
+            new ArrayList<TreeChange>();
+    /** Whether the whole tree is to be refreshed with pending changes. */
+    private boolean refreshPending;
+    /** Whether pending changes are scheduled to be applied. */
+    private boolean applyScheduled;
+    /** Applies pending changes on the UI thread. */
+    private final Runnable applyRunnable = new Runnable() {
+        public void run() {
+            applyPendingChanges();
+        }
+    };
     
     /**
      * @see ITreeContentProvider#dispose()
@@ -58,6 +96,10 @@ public class KeyTreeContentProvider implements
         if(oldInput != null) {
             ((KeyTree) oldInput).removeListener(this);
         }
+        synchronized (pendingChanges) {
+            pendingChanges.clear();
+            refreshPending = false;
+        }
         if(newInput != null) {
             ((KeyTree) newInput).addListener(this);
         }
@@ -70,7 +112,7 @@ public class KeyTreeContentProvider implements
         if(parentElement instanceof KeyTree) {
             return ((KeyTree) parentElement).getRootKeyItems().toArray(); 
         } else if (parentElement instanceof KeyTreeItem) {
-            return ((KeyTreeItem) parentElement).getChildren().toArray(); 
+            return ((KeyTreeItem) parentElement).toChildArray(); 
         }
         return EMPTY_ARRAY;
     }
@@ -89,7 +131,12 @@ public class KeyTreeContentProvider implements
      * @see ITreeContentProvider#hasChildren(Object)
      */
     public boolean hasChildren(Object element) {
-        return getChildren(element).length > 0;
+        if (element instanceof KeyTree) {
+            return !((KeyTree) element).getRootKeyItems().isEmpty();
+        } else if (element instanceof KeyTreeItem) {
+            return !((KeyTreeItem) element).isLeaf();
+        }
+        return false;
     }
 
     /**
@@ -103,14 +150,37 @@ public class KeyTreeContentProvider implements
      * @see IDeltaListener#add(DeltaEvent)
      */
     public void add(DeltaEvent event) {
-        treeViewer.refresh(true);
+        Object element = event.receiver();
+        if (element instanceof KeyTree) {
+            // whole tree laid out again
+            synchronized (pendingChanges) {
+                removePendingChanges();
+                refreshPending = true;
+            }
+            if (isUIThread()) {
+                applyPendingChanges();
+            } else {
+                scheduleApply();
+            }
+        } else if (element != null) {
+            addPendingChange(CHANGE_ADD, (KeyTreeItem) element);
+        }
     }
 
     /**
      * @see IDeltaListener#remove(DeltaEvent)
      */
     public void remove(DeltaEvent event) {
-        treeViewer.refresh(true);
+        KeyTreeItem item = (KeyTreeItem) event.receiver();
+        if (item != null) {
+            // parents left without children are removed along
+            KeyTreeItem removedItem = item;
+            while (removedItem.getParent() instanceof KeyTreeItem
+                    && !isInTree((KeyTreeItem) removedItem.getParent())) {
+                removedItem = (KeyTreeItem) removedItem.getParent();
+            }
+            addPendingChange(CHANGE_REMOVE, removedItem);
+        }
     }
 
     /**
@@ -119,14 +189,29 @@ public class KeyTreeContentProvider implements
     public void select(DeltaEvent event) {
         KeyTreeItem treeItem = (KeyTreeItem) event.receiver();
         if (treeItem != null) {
-            KeyTreeItem currentSelection = getTreeSelection();
-            if ((currentSelection == null) || (!treeItem.getId().endsWith(currentSelection.getId()))) {
-                StructuredSelection selection = new StructuredSelection(treeItem);
-                treeViewer.setSelection(selection);
+            boolean pending;
+            synchronized (pendingChanges) {
+                pending = applyScheduled;
+            }
+            if (!pending && isUIThread()) {
+                selectItem(treeItem);
+            } else {
+                addPendingChange(CHANGE_SELECT, treeItem);
             }
         }
     }
     
+    /**
+     * Selects the given key tree item, unless already selected.
+     * @param treeItem key tree item to select
+     */
+    private void selectItem(KeyTreeItem treeItem) {
+        KeyTreeItem currentSelection = getTreeSelection();
+        if ((currentSelection == null) || (!treeItem.getId().endsWith(currentSelection.getId()))) {
+            StructuredSelection selection = new StructuredSelection(treeItem);
+            treeViewer.setSelection(selection);
+        }
+    }
     
     /**
      * Gets the selected key tree item.
@@ -142,9 +227,214 @@ public class KeyTreeContentProvider implements
      * @see IDeltaListener#modify(DeltaEvent)
      */
     public void modify(DeltaEvent event) {
-        //TODO how to make sure many changes could do a "batch" refresh on tree?
         KeyTreeItem treeItem = (KeyTreeItem) event.receiver();
-        Object parentTreeItem = treeItem.getParent();
-        treeViewer.refresh(parentTreeItem, true);
+        if (treeItem != null) {
+            addPendingChange(CHANGE_MODIFY, treeItem);
+        }
+    }
+
+    /**
+     * Applies right away key tree changes not yet reflected by the viewer.
+     * Must be called from the UI thread.
+     */
+    public void flush() {
+        boolean pending;
+        synchronized (pendingChanges) {
+            pending = applyScheduled;
+        }
+        if (pending) {
+            applyPendingChanges();
+        }
+    }
+
+    /**
+     * Queues a change to be applied to the viewer.
+     * @param type change type
+     * @param item key tree item changed
+     */
+    private void addPendingChange(int type, KeyTreeItem item) {
+        synchronized (pendingChanges) {
+            if (type == CHANGE_SELECT || !refreshPending) {
+                pendingChanges.add(new TreeChange(type, item));
+            }
+            if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+                removePendingChanges();
+                refreshPending = true;
+            }
+        }
+        scheduleApply();
+    }
+
+    /**
+     * Removes all pending changes but selections, for when the whole tree
+     * is to be refreshed.
+     */
+    private void removePendingChanges() {
+        for (Iterator<TreeChange> iter = pendingChanges.iterator();
+                iter.hasNext();) {
+            if (iter.next().type != CHANGE_SELECT) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Schedules pending changes to be applied on the UI thread, unless
+     * already scheduled.
+     */
+    private void scheduleApply() {
+        synchronized (pendingChanges) {
+            if (applyScheduled) {
+                return;
+            }
+            applyScheduled = true;
+        }
+        Control control = treeViewer.getControl();
+        if (!control.isDisposed()) {
+            control.getDisplay().asyncExec(applyRunnable);
+        }
+    }
+
+    /**
+     * Applies pending changes to the viewer.  Items are added, removed and
+     * updated one by one, unless the whole tree is to be refreshed.
+     */
+    /*default*/ void applyPendingChanges() {
+        List<TreeChange> changes;
+        boolean refresh;
+        synchronized (pendingChanges) {
+            changes = new ArrayList<TreeChange>(pendingChanges);
+            pendingChanges.clear();
+            refresh = refreshPending;
+            refreshPending = false;
+            applyScheduled = false;
+        }
+        if (treeViewer.getControl().isDisposed()) {
+            return;
+        }
+        if (refresh) {
+            refreshViewer();
+        }
+        Set<KeyTreeItem> updatedItems = new HashSet<KeyTreeItem>();
+        for (TreeChange change : changes) {
+            KeyTreeItem item = change.item;
+            switch (change.type) {
+            case CHANGE_ADD:
+                if (isInTree(item)) {
+                    if (treeViewer.testFindItem(item) == null) {
+                        addItem(item);
+                    } else {
+                        updatedItems.add(item);
+                    }
+                    addParents(item, updatedItems);
+                }
+                break;
+            case CHANGE_REMOVE:
+                removeItem(item);
+                addParents(item, updatedItems);
+                break;
+            case CHANGE_MODIFY:
+                if (isInTree(item)) {
+                    updatedItems.add(item);
+                    addParents(item, updatedItems);
+                }
+                break;
+            case CHANGE_SELECT:
+                selectItem(item);
+                break;
+            }
+        }
+        List<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
+        for (KeyTreeItem item : updatedItems) {
+            if (isInTree(item)) {
+                items.add(item);
+            }
+        }
+        if (!items.isEmpty()) {
+            treeViewer.update(items.toArray(), null);
+        }
+    }
+
+    /**
+     * Refreshes the whole viewer.
+     */
+    protected void refreshViewer() {
+        treeViewer.refresh(true);
+    }
+
+    /**
+     * Adds a key tree item to the viewer, along with parents the viewer
+     * does not know about.
+     * @param item key tree item to add
+     */
+    protected void addItem(KeyTreeItem item) {
+        Object element = item;
+        Object parent = item.getParent();
+        while (parent instanceof KeyTreeItem
+                && treeViewer.testFindItem(parent) == null) {
+            element = parent;
+            parent = ((KeyTreeItem) parent).getParent();
+        }
+        treeViewer.add(parent, element);
+    }
+
+    /**
+     * Removes a key tree item from the viewer.
+     * @param item key tree item to remove
+     */
+    protected void removeItem(KeyTreeItem item) {
+        treeViewer.remove(item);
+    }
+
+    /**
+     * Adds parents of the given item still part of the tree to the given
+     * set, nested counts of parents changing with their children.
+     * @param item key tree item
+     * @param items set to add parent items to
+     */
+    private void addParents(KeyTreeItem item, Set<KeyTreeItem> items) {
+        Object parent = item.getParent();
+        while (parent instanceof KeyTreeItem) {
+            items.add((KeyTreeItem) parent);
+            parent = ((KeyTreeItem) parent).getParent();
+        }
+    }
+
+    /**
+     * Checks whether the given item is still part of its key tree.
+     * @param item key tree item
+     * @return <code>true</code> if part of the tree
+     */
+    protected boolean isInTree(KeyTreeItem item) {
+        return item.getKeyTree().getKeyTreeItem(item.getId()) == item;
+    }
+
+    /**
+     * Checks whether the current thread is the viewer UI thread.
+     * @return <code>true</code> if on UI thread
+     */
+    private boolean isUIThread() {
+        Control control = treeViewer.getControl();
+        return !control.isDisposed()
+                && Display.getCurrent() == control.getDisplay();
+    }
+
+    /**
+     * Key tree change waiting to be applied to the viewer.
+     */
+    private static class TreeChange {
+        /** Change type. */
+        private final int type;
+        /** Key tree item changed. */
+        private final KeyTreeItem item;
+        /**
+         * Constructor.
+         * @param type change type
+         * @param item key tree item changed
+         */
+        TreeChange(int type, KeyTreeItem item) {
+            this.type = type;
+            this.item = item;
+        }
     }
 }
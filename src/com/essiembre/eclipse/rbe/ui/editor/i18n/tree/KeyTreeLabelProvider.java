@@ -32,8 +32,6 @@ import org.eclipse.swt.graphics.Image;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsCommentedVisitor;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsMissingValueVisitor;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.OverlayImageIcon;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
@@ -71,10 +69,8 @@ public class KeyTreeLabelProvider
         int iconFlags = 0;
 
         // Figure out background icon
-        if (treeItem.getKeyTree().getBundleGroup().isKey(treeItem.getId())) {
-            IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-            treeItem.accept(commentedVisitor, null);
-            if (commentedVisitor.hasOneCommented()) {
+        if (treeItem.isKey()) {
+            if (treeItem.isCommented()) {
                 iconFlags += KEY_COMMENTED;
             } else {
                 iconFlags += KEY_DEFAULT;
@@ -85,11 +81,9 @@ public class KeyTreeLabelProvider
         
         // Maybe add warning icon        
         if (RBEPreferences.getReportMissingValues()) {
-            IsMissingValueVisitor misValVisitor = new IsMissingValueVisitor();
-            treeItem.accept(misValVisitor, null);
-            if (misValVisitor.isMissingValue()) {
+            if (treeItem.isMissingValue()) {
                 iconFlags += WARNING;
-            } else if (misValVisitor.isMissingChildValueOnly()) {
+            } else if (treeItem.isMissingChildValueOnly()) {
                 iconFlags += WARNING_GREY;
             }
         }
@@ -101,7 +95,13 @@ public class KeyTreeLabelProvider
      * @see ILabelProvider#getText(Object)
      */
     public String getText(Object element) {
-        return ((KeyTreeItem) element).getName(); 
+        KeyTreeItem treeItem = (KeyTreeItem) element;
+        int missingCount = treeItem.getNestedMissingCount();
+        if (missingCount > 0 && RBEPreferences.getReportMissingValues()) {
+            return RBEPlugin.getString("key.missing.count", //$NON-NLS-1$
+                    treeItem.getName(), Integer.toString(missingCount));
+        }
+        return treeItem.getName(); 
     }
 
     /**
@@ -117,8 +117,8 @@ public class KeyTreeLabelProvider
      */
     public Font getFont(Object element) {
         KeyTreeItem item = (KeyTreeItem) element; 
-        if (item.getChildren().size() > 0) {
-            if (item.getKeyTree().getBundleGroup().isKey(item.getId())) {
+        if (!item.isLeaf()) {
+            if (item.isKey()) {
                 return groupFontKey;
             }
             return groupFontNoKey;
@@ -131,9 +131,7 @@ public class KeyTreeLabelProvider
      */
     public Color getForeground(Object element) {
         KeyTreeItem treeItem = (KeyTreeItem) element; 
-        IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-        treeItem.accept(commentedVisitor, null);
-        if (commentedVisitor.hasOneCommented()) {
+        if (treeItem.isCommented()) {
             return commentedColor;
         }
         return null;
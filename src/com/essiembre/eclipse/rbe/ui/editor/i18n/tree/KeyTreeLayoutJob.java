@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeLayout;
+import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
+
+/**
+ * Builds a key tree layout in the background, then hands it over on the UI
+ * thread to be set on the key tree.  Layouts built while keys they lay out
+ * were added or removed are requested and built again.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public abstract class KeyTreeLayoutJob extends Job {
+
+    /** Key tree to lay out. */
+    private final KeyTree keyTree;
+    /** Updater laying out the keys. */
+    private final KeyTreeUpdater updater;
+    /** Display to hand the layout over on. */
+    private final Display display;
+    /** Layout to build. */
+    private volatile KeyTreeLayout layout;
+
+    /**
+     * Constructor.  Must be called on the UI thread.
+     * @param keyTree key tree to lay out
+     * @param updater key tree updater
+     * @param display display to hand the layout over on
+     */
+    public KeyTreeLayoutJob(
+            KeyTree keyTree, KeyTreeUpdater updater, Display display) {
+        super(RBEPlugin.getString("key.layout.job")); //$NON-NLS-1$
+        this.keyTree = keyTree;
+        this.updater = updater;
+        this.display = display;
+        this.layout = keyTree.newLayout(updater);
+    }
+
+    /**
+     * Hands the layout over right away if already built (e.g. toggling
+     * back to the previous layout), or schedules building it otherwise.
+     */
+    public void start() {
+        if (layout.isBuilt()) {
+            setLayout(layout);
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * @see org.eclipse.core.runtime.jobs.Job#run(
+     *         org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        final KeyTreeLayout builtLayout = layout;
+        boolean failed = false;
+        monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+        try {
+            builtLayout.build(monitor);
+        } catch (RuntimeException e) {
+            RBEPlugin.log(getName(), e);
+            failed = true;
+        } finally {
+            monitor.done();
+        }
+        if (monitor.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
+        final boolean retry = !failed;
+        if (!display.isDisposed()) {
+            display.asyncExec(new Runnable() {
+                public void run() {
+                    if (retry && !builtLayout.isCurrent()
+                            && keyTree.isRequested(builtLayout)) {
+                        // keys added or removed while building
+                        relayout();
+                    } else {
+                        setLayout(builtLayout);
+                    }
+                }
+            });
+        }
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * Requests a new layout from the key tree and builds it.  Called on
+     * the UI thread.
+     */
+    /*default*/ void relayout() {
+        layout = keyTree.newLayout(updater);
+        start();
+    }
+
+    /**
+     * Sets the layout on the key tree, typically through
+     * {@link KeyTree#setLayout(KeyTreeLayout)}.  Called on the UI thread.
+     * @param layout layout built, or left unbuilt if building failed (the
+     *        key tree then keeps its items)
+     */
+    protected abstract void setLayout(KeyTreeLayout layout);
+}
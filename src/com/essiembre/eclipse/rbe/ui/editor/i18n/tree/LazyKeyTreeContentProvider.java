@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Content provider for virtual (<code>SWT.VIRTUAL</code>) key tree
+ * viewers, meant for bundle groups with many keys.  Only items shown are
+ * created by the viewer, which asks for them by index.  Viewer filters
+ * are applied by this provider, while sorting is the key tree own.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class LazyKeyTreeContentProvider extends KeyTreeContentProvider
+        implements ILazyTreeContentProvider {
+
+    /** Number of keys from which a virtual viewer should be used. */
+    public static final int VIRTUAL_KEY_COUNT = 5000;
+
+    /** Children shown by the viewer (key=parent; value=children). */
+    private final Map<Object, Object[]> childrenCache =
+            new HashMap<Object, Object[]>();
+    /** Number of children shown by the viewer for items whose children
+     *  were not cached, when no viewer filter applies (key=item;
+     *  value=child count). */
+    private final Map<Object, Integer> childCountCache =
+            new HashMap<Object, Integer>();
+    /** Key tree filter in effect when children were cached. */
+    private String cachedFilter;
+
+    /**
+     * Constructor.
+     */
+    public LazyKeyTreeContentProvider() {
+        super();
+    }
+
+    /**
+     * Checks whether the given key tree is best shown by a virtual viewer.
+     * @param keyTree key tree
+     * @return <code>true</code> if a virtual viewer should be used
+     */
+    public static boolean isVirtual(KeyTree keyTree) {
+        return keyTree.getBundleGroup().getKeys().size() >= VIRTUAL_KEY_COUNT;
+    }
+
+    /**
+     * @see KeyTreeContentProvider#inputChanged(Viewer, Object, Object)
+     */
+    @Override
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        clearCache();
+        super.inputChanged(viewer, oldInput, newInput);
+    }
+
+    /**
+     * @see ILazyTreeContentProvider#updateElement(Object, int)
+     */
+    public void updateElement(Object parent, int index) {
+        Object[] children = getVisibleChildren(parent);
+        if (index < children.length) {
+            KeyTreeItem child = (KeyTreeItem) children[index];
+            treeViewer.replace(parent, index, child);
+            treeViewer.setChildCount(child, getVisibleChildCount(child));
+        }
+    }
+
+    /**
+     * @see ILazyTreeContentProvider#updateChildCount(Object, int)
+     */
+    public void updateChildCount(Object element, int currentChildCount) {
+        int childCount = getVisibleChildCount(element);
+        if (childCount != currentChildCount) {
+            treeViewer.setChildCount(element, childCount);
+        }
+    }
+
+    /**
+     * @see KeyTreeContentProvider#refreshViewer()
+     */
+    @Override
+    protected void refreshViewer() {
+        clearCache();
+        super.refreshViewer();
+    }
+
+    /**
+     * Forgets children shown by the viewer.
+     */
+    private void clearCache() {
+        childrenCache.clear();
+        childCountCache.clear();
+    }
+
+    /**
+     * @see KeyTreeContentProvider#addItem(KeyTreeItem)
+     */
+    @Override
+    protected void addItem(KeyTreeItem item) {
+        refreshParents(item);
+    }
+
+    /**
+     * @see KeyTreeContentProvider#removeItem(KeyTreeItem)
+     */
+    @Override
+    protected void removeItem(KeyTreeItem item) {
+        refreshParents(item);
+    }
+
+    /**
+     * Refreshes the highest parent of the given item whose children shown
+     * by the viewer are no longer the right ones.
+     * @param item key tree item added or removed
+     */
+    private void refreshParents(KeyTreeItem item) {
+        Object changedParent = null;
+        for (Object parent = item.getParent(); parent != null;
+                parent = getParent(parent)) {
+            Object[] children = childrenCache.remove(parent);
+            Integer childCount = childCountCache.remove(parent);
+            if ((children != null || childCount != null)
+                    && (!(parent instanceof KeyTreeItem)
+                            || isInTree((KeyTreeItem) parent))) {
+                if (children != null) {
+                    Object[] newChildren = getVisibleChildren(parent);
+                    if (!isSame(children, newChildren)) {
+                        changedParent = parent;
+                    }
+                } else if (childCount.intValue() 
+                        != getVisibleChildCount(parent)) {
+                    // children added or removed change the count
+                    changedParent = parent;
+                }
+            }
+        }
+        if (changedParent != null) {
+            treeViewer.refresh(changedParent);
+        }
+    }
+
+    /**
+     * Gets the number of children of the given element that the viewer
+     * shows.  Without viewer filters, children of key tree items are
+     * counted without being copied.
+     * @param element key tree or key tree item
+     * @return number of children
+     */
+    private int getVisibleChildCount(Object element) {
+        checkFilter();
+        if (element instanceof KeyTreeItem 
+                && !childrenCache.containsKey(element)) {
+            KeyTreeItem item = (KeyTreeItem) element;
+            if (treeViewer.getFilters().length == 0) {
+                int childCount = item.getChildCount();
+                childCountCache.put(element, new Integer(childCount));
+                return childCount;
+            } else if (item.isLeaf()) {
+                return 0;
+            }
+        }
+        return getVisibleChildren(element).length;
+    }
+
+    /**
+     * Gets the children of the given element that the viewer shows, in
+     * key tree order.
+     * @param element key tree or key tree item
+     * @return children
+     */
+    private Object[] getVisibleChildren(Object element) {
+        checkFilter();
+        Object[] children = childrenCache.get(element);
+        if (children == null) {
+            ViewerFilter[] filters = treeViewer.getFilters();
+            if (element instanceof KeyTree) {
+                Collection<KeyTreeItem> items =
+                        ((KeyTree) element).getRootKeyItems();
+                if (filters.length == 0) {
+                    children = items.toArray();
+                } else {
+                    List<Object> visibleItems = new ArrayList<Object>();
+                    for (KeyTreeItem item : items) {
+                        if (isSelected(filters, element, item)) {
+                            visibleItems.add(item);
+                        }
+                    }
+                    children = visibleItems.toArray();
+                }
+            } else {
+                KeyTreeItem parent = (KeyTreeItem) element;
+                if (filters.length == 0) {
+                    children = parent.toChildArray();
+                } else {
+                    List<Object> visibleItems = new ArrayList<Object>();
+                    for (int i = 0; i < parent.getChildCount(); i++) {
+                        KeyTreeItem item = parent.getChild(i);
+                        if (isSelected(filters, element, item)) {
+                            visibleItems.add(item);
+                        }
+                    }
+                    children = visibleItems.toArray();
+                }
+            }
+            childCountCache.remove(element);
+            childrenCache.put(element, children);
+        }
+        return children;
+    }
+
+    /**
+     * Forgets children shown by the viewer if the key tree filter changed
+     * since they were cached.
+     */
+    private void checkFilter() {
+        KeyTree keyTree = (KeyTree) treeViewer.getInput();
+        String filter = keyTree.getFilter();
+        if (filter == null ? cachedFilter != null
+                : !filter.equals(cachedFilter)) {
+            clearCache();
+            cachedFilter = filter;
+        }
+    }
+
+    /**
+     * Checks whether an item passes all given filters.
+     * @param filters viewer filters
+     * @param parent parent element
+     * @param item key tree item
+     * @return <code>true</code> if the item is to be shown
+     */
+    private boolean isSelected(
+            ViewerFilter[] filters, Object parent, KeyTreeItem item) {
+        for (int i = 0; i < filters.length; i++) {
+            if (!filters[i].select(treeViewer, parent, item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two arrays hold the same objects.
+     * @param objects1 first array
+     * @param objects2 second array
+     * @return <code>true</code> if same objects, in the same order
+     */
+    private static boolean isSame(Object[] objects1, Object[] objects2) {
+        if (objects1.length != objects2.length) {
+            return false;
+        }
+        for (int i = 0; i < objects1.length; i++) {
+            if (objects1[i] != objects2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
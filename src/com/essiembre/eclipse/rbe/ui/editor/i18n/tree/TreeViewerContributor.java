@@ -43,6 +43,7 @@ import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeLayout;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.IncompletionUpdater;
@@ -263,7 +264,7 @@ public class TreeViewerContributor {
         String key = selectedItem.getId();
         String msgHead = null;
         String msgBody = null;
-        if (selectedItem.getChildren().size() == 0) {
+        if (selectedItem.isLeaf()) {
             msgHead = RBEPlugin.getString(
                     "dialog.rename.head.single"); //$NON-NLS-1$
             msgBody = RBEPlugin.getString(
@@ -284,12 +285,17 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                String oldItemKey = item.getId();
-                if (oldItemKey.startsWith(key)) {
-                    String newItemKey = newKey + oldItemKey.substring(key.length());
-                    bundleGroup.renameKey(oldItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    String oldItemKey = item.getId();
+                    if (oldItemKey.startsWith(key)) {
+                        String newItemKey = newKey + oldItemKey.substring(key.length());
+                        bundleGroup.renameKey(oldItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.commitBatch();
             }
         }
     }
@@ -304,8 +310,13 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (KeyTreeItem item : items) {
-            bundleGroup.uncommentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (KeyTreeItem item : items) {
+                bundleGroup.uncommentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.commitBatch();
         }
     }
 
@@ -318,7 +329,7 @@ public class TreeViewerContributor {
         String key = selectedItem.getId();
         String msgHead = null;
         String msgBody = null;
-        if (selectedItem.getChildren().size() == 0) {
+        if (selectedItem.isLeaf()) {
             msgHead = RBEPlugin.getString(
                     "dialog.delete.head.single"); //$NON-NLS-1$
             msgBody = RBEPlugin.getString(
@@ -338,8 +349,13 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                bundleGroup.removeKey(item.getId());
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    bundleGroup.removeKey(item.getId());
+                }
+            } finally {
+                bundleGroup.commitBatch();
             }
         }
     }
@@ -354,8 +370,13 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (KeyTreeItem item : items) {
-            bundleGroup.commentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (KeyTreeItem item : items) {
+                bundleGroup.commentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.commitBatch();
         }
         
     }
@@ -369,7 +390,7 @@ public class TreeViewerContributor {
         String key = selectedItem.getId();
         String msgHead = null;
         String msgBody = null;
-        if (selectedItem.getChildren().size() == 0) {
+        if (selectedItem.isLeaf()) {
             msgHead = RBEPlugin.getString(
                     "dialog.duplicate.head.single"); //$NON-NLS-1$
             msgBody = RBEPlugin.getString(
@@ -390,13 +411,18 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                String origItemKey = item.getId();
-                if (origItemKey.startsWith(key)) {
-                    String newItemKey = 
-                            newKey + origItemKey.substring(key.length());
-                    bundleGroup.copyKey(origItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    String origItemKey = item.getId();
+                    if (origItemKey.startsWith(key)) {
+                        String newItemKey = 
+                                newKey + origItemKey.substring(key.length());
+                        bundleGroup.copyKey(origItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.commitBatch();
             }
         }
     }
@@ -420,50 +446,43 @@ public class TreeViewerContributor {
      */
     public void update(int action, boolean activate) {
         treeviewer.getTree().setCursor(waitcursor);
+        boolean expand = false;
         if(action == KT_INCOMPLETE) {
             if(activate) {
-                // we're setting a filter which uses the structural updater
-                tree.setUpdater(
-                    new IncompletionUpdater(tree.getBundleGroup(), structuralupdater)
-                );
                 mode = mode | KT_INCOMPLETE;
             } else {
-                // disabled, so we can reuse the structural updater
-                tree.setUpdater(structuralupdater);
                 mode = mode & (~KT_INCOMPLETE);
             }
-            if(structuralupdater instanceof GroupedKeyTreeUpdater) {
-                if(RBEPreferences.getKeyTreeExpanded()) {
-                    treeviewer.expandAll();
-                }			
-            }
+            expand = structuralupdater instanceof GroupedKeyTreeUpdater;
         } else if(action == KT_FLAT) {
             structuralupdater = new FlatKeyTreeUpdater(); 
-            if((mode & KT_INCOMPLETE) != 0) {
-                // we need to activate the filter
-                tree.setUpdater(
-                    new IncompletionUpdater(tree.getBundleGroup(), structuralupdater)
-                );				
-            } else {
-                tree.setUpdater(structuralupdater);
-            }
             mode = mode & (~KT_HIERARCHICAL);
         } else if(action == KT_HIERARCHICAL) {
             structuralupdater = new GroupedKeyTreeUpdater(RBEPreferences.getKeyGroupSeparator()); 
-            if((mode & KT_INCOMPLETE) != 0) {
-                // we need to activate the filter
-                tree.setUpdater(
-                    new IncompletionUpdater(tree.getBundleGroup(), structuralupdater)
-                );				
-            } else {
-                tree.setUpdater(structuralupdater);
-            }
-            if(RBEPreferences.getKeyTreeExpanded()) {
-                treeviewer.expandAll();
-            }			
             mode = mode | KT_HIERARCHICAL;
+            expand = true;
+        }
+        KeyTreeUpdater updater = structuralupdater;
+        if((mode & KT_INCOMPLETE) != 0) {
+            // we're setting a filter which uses the structural updater
+            updater = new IncompletionUpdater(tree.getBundleGroup(), structuralupdater);
         }
-        treeviewer.getTree().setCursor(defaultcursor);
+        // expanding a virtual tree would create all its items
+        final boolean expandAll = expand && RBEPreferences.getKeyTreeExpanded()
+                && (treeviewer.getTree().getStyle() & SWT.VIRTUAL) == 0;
+        // the layout is built in the background, unless already built
+        new KeyTreeLayoutJob(tree, updater, treeviewer.getTree().getDisplay()) {
+            @Override
+            protected void setLayout(KeyTreeLayout layout) {
+                if (treeviewer.getTree().isDisposed()) {
+                    return;
+                }
+                if (tree.setLayout(layout) && expandAll) {
+                    treeviewer.expandAll();
+                }
+                treeviewer.getTree().setCursor(defaultcursor);
+            }
+        }.start();
     }
     
 
@@ -22,22 +22,32 @@ package com.essiembre.eclipse.rbe.ui.editor.resources;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.FormattingOptions;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesLayout;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
@@ -53,11 +63,19 @@ import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
  */
 public class ResourceManager {
 
+    /** Share of the entries of a bundle (one in so many) above which
+     *  modified entries are not patched in the source: generating it all
+     *  is then faster. */
+    private static final int MAX_PATCHED_SHARE = 16;
+
     private IResourceFactory resourcesFactory;
     private final BundleGroup bundleGroup;
     private final KeyTree keyTree;
     /*default*/ final Map<Locale, SourceEditor> sourceEditors = new HashMap<Locale, SourceEditor>();
     private final List<Locale> locales = new ArrayList<Locale>();
+    /** Changes made to bundles since their source was last generated. */
+    private final Map<Locale, BundleChanges> bundleChanges = 
+            new HashMap<Locale, BundleChanges>();
     
     /**
      * Constructor.
@@ -75,8 +93,8 @@ public class ResourceManager {
             Locale locale = sourceEditor.getLocale();
             sourceEditors.put(locale, sourceEditor);
             locales.add(locale);
-            bundleGroup.addBundle(
-                    locale, PropertiesParser.parse(sourceEditor.getContent()));			
+            bundleGroup.addBundle(locale, parseCachedContent(sourceEditor));
+            trackChanges(locale);
         }
         bundleGroup.addListener(new IDeltaListener() {
             public void add(DeltaEvent event) {}    // do nothing
@@ -85,8 +103,16 @@ public class ResourceManager {
                 final Bundle bundle = (Bundle) event.receiver();
                 final SourceEditor editor = 
                         sourceEditors.get(bundle.getLocale());
-                String editorContent = PropertiesGenerator.generate(bundle);
-                editor.setContent(editorContent);
+                BundleChanges changes = bundleChanges.get(bundle.getLocale());
+                FormattingOptions options = 
+                        RBEPreferences.getFormattingOptions();
+                if (!patchGeneratedContent(editor, bundle, changes, options)) {
+                    PropertiesLayout layout = new PropertiesLayout();
+                    String editorContent = PropertiesGenerator.generate(
+                            bundle, layout, options);
+                    editor.setContent(editorContent, layout);
+                }
+                changes.reset(bundle.getComment(), options);
             }
             public void select(DeltaEvent event) {
             }
@@ -192,23 +218,315 @@ public class ResourceManager {
         SourceEditor sourceEditor = resourcesFactory.addResource(resource, locale);
         sourceEditors.put(sourceEditor.getLocale(), sourceEditor);
         locales.add(locale);
-        bundleGroup.addBundle(
-                locale, PropertiesParser.parse(sourceEditor.getContent())); 
+        bundleGroup.addBundle(locale, parseCachedContent(sourceEditor)); 
+        trackChanges(locale);
         return sourceEditor;
     }
     /**
-     * Reloads the properties files (parse them).
+     * Reloads the properties files (parse them).  When possible, only
+     * the region of a file that changed since last reload is parsed again.
      */
     public void reloadProperties() {
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (SourceEditor editor : editors) {
-            if (editor.isCacheDirty()) {
+            if (editor.isCacheDirty() && !reloadChangedRegion(editor)) {
                 bundleGroup.addBundle(
                         editor.getLocale(),
-                        PropertiesParser.parse(editor.getContent()));
+                        PropertiesParser.parse(editor.getContent(), 
+                                RBEPreferences.getParsingOptions()));
                 editor.resetCache();
             }
         }
     }
 
+    /**
+     * Parses the cached content of a source editor, keeping its layout 
+     * with the source editor for later reloads.
+     * @param sourceEditor source editor
+     * @return a new bundle
+     */
+    private Bundle parseCachedContent(SourceEditor sourceEditor) {
+        PropertiesLayout layout = new PropertiesLayout();
+        Bundle bundle = PropertiesParser.parse(
+                sourceEditor.getCachedContent(), layout, 
+                RBEPreferences.getParsingOptions());
+        if (countEntries(layout) == countEntries(bundle)) {
+            sourceEditor.setLayout(layout);
+        }
+        return bundle;
+    }
+
+    /**
+     * Parses again the entries found in the region of a source editor 
+     * that changed since it was last reloaded, then updates the matching
+     * bundle with them.  Entries outside that region are left untouched.
+     * Nothing is done if the changed region cannot be delimited by 
+     * unchanged entries, or if the source editor layout is not known to
+     * match the bundle.
+     * @param editor source editor
+     * @return <code>true</code> if the bundle was updated
+     */
+    private boolean reloadChangedRegion(SourceEditor editor) {
+        IRegion changedRegion = editor.getChangedRegion();
+        Bundle bundle = bundleGroup.getBundle(editor.getLocale());
+        if (changedRegion == null || bundle == null) {
+            return false;
+        }
+        Collection<String> oldKeys = new HashSet<String>();
+        PropertiesLayout layout = editor.getLayout();
+        if (layout == null) {
+            layout = new PropertiesLayout();
+            Bundle cachedBundle = PropertiesParser.parse(
+                    editor.getCachedContent(), layout, 
+                    RBEPreferences.getParsingOptions());
+            if (!isLayoutOf(layout, cachedBundle, bundle, oldKeys)) {
+                return false;
+            }
+        }
+
+        // Delimit region with unchanged entries
+        String content = editor.getContent();
+        int shift = editor.getChangedLength();
+        int changeStart = changedRegion.getOffset();
+        int oldChangeEnd = changeStart + changedRegion.getLength() - shift;
+        int fromIndex = layout.getLastIndexEndingBefore(changeStart) + 1;
+        int toIndex = layout.getLastIndexEndingBefore(oldChangeEnd) + 1;
+        int start = 0;
+        if (fromIndex > 0) {
+            start = layout.getEnd(fromIndex - 1);
+        }
+        int end = content.length();
+        if (toIndex < layout.getSize()) {
+            end = layout.getEnd(toIndex) + shift;
+            toIndex++;
+        }
+        PropertiesLayout regionLayout = new PropertiesLayout();
+        Bundle regionBundle = PropertiesParser.parse(content, start, end, 
+                regionLayout, RBEPreferences.getParsingOptions());
+        if (regionBundle == null) {
+            return false;
+        }
+
+        // New keys must not be found elsewhere in the content
+        for (int i = fromIndex; i < toIndex; i++) {
+            oldKeys.add(layout.getKey(i));
+        }
+        for (int i = 0; i < regionLayout.getSize(); i++) {
+            String key = regionLayout.getKey(i);
+            if (!oldKeys.contains(key) && bundle.getEntry(key) != null) {
+                return false;
+            }
+        }
+        if (countEntries(regionLayout) != countEntries(regionBundle)) {
+            return false;
+        }
+
+        bundleGroup.replaceBundleEntries(
+                editor.getLocale(), oldKeys, regionBundle);
+        if (start == 0) {
+            bundle.setComment(regionBundle.getComment());
+        }
+        layout.replace(fromIndex, toIndex, regionLayout, shift);
+        editor.resetCache();
+        editor.setLayout(layout);
+        return true;
+    }
+
+    /**
+     * Checks whether a layout can be used to update the given bundle.
+     * Keys of bundle entries not found in the layout are added to the
+     * given collection.
+     * @param layout layout of parsed content
+     * @param parsedBundle bundle obtained from parsed content
+     * @param bundle bundle to be updated
+     * @param missingKeys collection receiving keys not found in layout
+     * @return <code>true</code> if all parsed entries are found in the 
+     *         bundle, once each
+     */
+    private boolean isLayoutOf(PropertiesLayout layout, Bundle parsedBundle,
+            Bundle bundle, Collection<String> missingKeys) {
+        if (countEntries(layout) != countEntries(parsedBundle)
+                || !parsedBundle.getComment().equals(bundle.getComment())) {
+            return false;
+        }
+        for (Iterator<BundleEntry> iter = parsedBundle.iterator(); 
+                iter.hasNext();) {
+            BundleEntry entry = iter.next();
+            if (!entry.equals(bundle.getEntry(entry.getKey()))) {
+                return false;
+            }
+        }
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            String key = iter.next().getKey();
+            if (parsedBundle.getEntry(key) == null) {
+                missingKeys.add(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts tracking changes made to the bundle matching the given locale.
+     * @param locale bundle locale
+     */
+    private void trackChanges(Locale locale) {
+        if (!bundleChanges.containsKey(locale)) {
+            BundleChanges changes = new BundleChanges();
+            bundleGroup.getBundle(locale).addListener(changes);
+            bundleChanges.put(locale, changes);
+        }
+    }
+
+    /**
+     * Updates the source of a bundle by replacing only its modified entries
+     * in the source previously generated for it.  Nothing is done if the
+     * source was edited since, if entries were added or removed, if an 
+     * entry was written or left out only before or after being modified,
+     * if formatting options changed, or if too many entries were modified
+     * for patching to be worth it.
+     * @param editor source editor
+     * @param bundle modified bundle
+     * @param changes changes made to the bundle since source was generated
+     * @param options current formatting options
+     * @return <code>true</code> if the source was updated
+     */
+    private boolean patchGeneratedContent(SourceEditor editor, 
+            Bundle bundle, BundleChanges changes, FormattingOptions options) {
+        PropertiesLayout layout = editor.getGeneratedLayout();
+        if (layout == null 
+                || !changes.isPatchable(bundle.getComment(), options)
+                || changes.modifiedKeys.size() 
+                        > layout.getSize() / MAX_PATCHED_SHARE) {
+            return false;
+        }
+        // sorted keys match increasing layout indexes
+        String[] keys = changes.modifiedKeys.toArray(
+                new String[changes.modifiedKeys.size()]);
+        Arrays.sort(keys);
+        String[] texts = 
+                PropertiesGenerator.generateEntries(bundle, keys, options);
+        int[] indexes = new int[keys.length];
+        int[] lengths = new int[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int index = layout.getSortedIndex(keys[i]);
+            if ((index < 0) != (texts[i] == null)) {
+                return false;
+            }
+            if (index >= 0) {
+                indexes[count] = index;
+                lengths[count] = texts[i].length();
+                texts[count] = texts[i];
+                count++;
+            }
+        }
+        try {
+            // last entry first, leaving offsets of entries before it valid
+            for (int i = count - 1; i >= 0; i--) {
+                int start = layout.getStart(indexes[i]);
+                editor.replaceContent(
+                        start, layout.getEnd(indexes[i]) - start, texts[i]);
+            }
+        } catch (BadLocationException e) {
+            return false;
+        }
+        layout.setLengths(indexes, lengths, count);
+        return true;
+    }
+
+    /**
+     * Counts the entries of a layout which make it to a bundle.
+     * @param layout a layout
+     * @return number of entries
+     */
+    private static int countEntries(PropertiesLayout layout) {
+        int count = 0;
+        for (int i = 0; i < layout.getSize(); i++) {
+            if (layout.getKey(i).trim().length() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the entries of a bundle.
+     * @param bundle a bundle
+     * @return number of entries
+     */
+    private static int countEntries(Bundle bundle) {
+        int count = 0;
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Changes made to a bundle since its source was last generated.
+     */
+    private static class BundleChanges implements IDeltaListener {
+        /** Bundle comment when source was generated. */
+        private String comment;
+        /** Formatting options source was generated with. */
+        private FormattingOptions options;
+        /** Keys of modified entries. */
+        /*default*/ final Set<String> modifiedKeys = new HashSet<String>();
+        /** Whether entries were added or removed (or source never 
+         *  generated). */
+        private boolean restructured = true;
+
+        /**
+         * Forgets about changes, once source is generated.
+         * @param bundleComment bundle comment
+         * @param formattingOptions formatting options used
+         */
+        /*default*/ void reset(
+                String bundleComment, FormattingOptions formattingOptions) {
+            comment = bundleComment;
+            options = formattingOptions;
+            modifiedKeys.clear();
+            restructured = false;
+        }
+        /**
+         * Checks whether changes are limited to modified entries.
+         * @param bundleComment current bundle comment
+         * @param formattingOptions current formatting options
+         * @return <code>true</code> if only entries were modified
+         */
+        /*default*/ boolean isPatchable(
+                String bundleComment, FormattingOptions formattingOptions) {
+            if (restructured || options != formattingOptions) {
+                return false;
+            }
+            return comment == null 
+                    ? bundleComment == null : comment.equals(bundleComment);
+        }
+        /**
+         * @see IDeltaListener#add(DeltaEvent)
+         */
+        public void add(DeltaEvent event) {
+            restructured = true;
+        }
+        /**
+         * @see IDeltaListener#remove(DeltaEvent)
+         */
+        public void remove(DeltaEvent event) {
+            restructured = true;
+        }
+        /**
+         * @see IDeltaListener#modify(DeltaEvent)
+         */
+        public void modify(DeltaEvent event) {
+            modifiedKeys.add(((BundleEntry) event.receiver()).getKey());
+        }
+        /**
+         * @see IDeltaListener#select(DeltaEvent)
+         */
+        public void select(DeltaEvent event) {
+            // do nothing
+        }
+    }
+
 }
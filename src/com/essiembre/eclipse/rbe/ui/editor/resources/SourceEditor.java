@@ -25,10 +25,18 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextSelection;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.eclipse.ui.texteditor.ITextEditor;
 
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesLayout;
+
 /**
  * Wrapper around a properties file text editor providing extra founctionality.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
@@ -39,7 +47,22 @@ public class SourceEditor {
     private final Locale locale;
     private final IFile file;
     private final ITextEditor editor;
+    /** Cached content, or <code>null</code> if same as document content. */
     private String contentCache;
+    /** Layout of cached content, or <code>null</code> if unknown. */
+    private PropertiesLayout layout;
+    /** Layout of generated content, or <code>null</code> if edited. */
+    private PropertiesLayout generatedLayout;
+    /** Whether content is being replaced by this source editor. */
+    private boolean replacing;
+    /** Document changes are tracked for. */
+    private final IDocument document;
+    /** Start of content changed since cache was reset, or -1. */
+    private int changeStart = -1;
+    /** End of content changed since cache was reset. */
+    private int changeEnd;
+    /** Number of characters added since cache was reset. */
+    private int changeShift;
     
     /**
      * Constructor.
@@ -52,6 +75,33 @@ public class SourceEditor {
         this.editor = editor;
         this.locale = locale;
         this.file = file;
+        document = getDocument();
+        document.addDocumentListener(new IDocumentListener() {
+            public void documentAboutToBeChanged(DocumentEvent event) {
+                if (replacing) {
+                    return;
+                }
+                generatedLayout = null;
+                if (contentCache == null) {
+                    contentCache = event.getDocument().get();
+                }
+                int end = event.getOffset() + event.getLength();
+                int shift = (event.getText() == null 
+                        ? 0 : event.getText().length()) - event.getLength();
+                if (changeStart == -1) {
+                    changeStart = event.getOffset();
+                    changeEnd = end;
+                } else {
+                    changeStart = Math.min(changeStart, event.getOffset());
+                    changeEnd = Math.max(changeEnd, end);
+                }
+                changeEnd += shift;
+                changeShift += shift;
+            }
+            public void documentChanged(DocumentEvent event) {
+                // changes are tracked before they occur
+            }
+        });
         contentCache = getContent();
     }
 
@@ -83,23 +133,77 @@ public class SourceEditor {
      * @return <code>true</code> if dirty
      */
     public boolean isCacheDirty() {
-        return !getContent().equals(contentCache);
+        if (changeStart == -1 && getDocument() == document) {
+            return false;
+        }
+        return !getContent().equals(getCachedContent());
     }
     
     /**
-     * Resets the source editor cache.
+     * Resets the source editor cache.  The cached content layout is
+     * cleared.
      */
     public void resetCache() {
         contentCache = getContent();
+        layout = null;
+        generatedLayout = null;
+        clearChanges();
     }
     
+    /**
+     * Gets the cached content, as it was when the cache was last reset.
+     * @return cached content
+     */
+    public String getCachedContent() {
+        if (contentCache == null) {
+            contentCache = getContent();
+        }
+        return contentCache;
+    }
+
+    /**
+     * Gets the layout of the cached content.
+     * @return layout, or <code>null</code> if unknown
+     */
+    public PropertiesLayout getLayout() {
+        return layout;
+    }
+    /**
+     * Sets the layout of the cached content.
+     * @param layout layout of the cached content
+     */
+    public void setLayout(PropertiesLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Gets the region holding all content changes made since the cache
+     * was last reset, as found in the current content.  Content before
+     * and after that region is the same as in the cached content.
+     * @return changed region, or <code>null</code> if unknown or if
+     *         there are no changes
+     */
+    public IRegion getChangedRegion() {
+        if (changeStart == -1 || getDocument() != document) {
+            return null;
+        }
+        return new Region(changeStart, changeEnd - changeStart);
+    }
+    /**
+     * Gets the number of characters added (or removed, if negative) to the
+     * content since the cache was last reset.
+     * @return number of characters added
+     */
+    public int getChangedLength() {
+        return changeShift;
+    }
+
     /**
      * Gets the content of this source editor.
      * @return content
      */
     public String getContent() {
-        return editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).get();
+        return getDocument().get();
     }
     
     /**
@@ -107,9 +211,80 @@ public class SourceEditor {
      * @param content new content
      */
     public void setContent(String content) {
-        editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).set(content);
+        setContent(content, null);
+    }
+
+    /**
+     * Sets the content of this source editor (replacing existing content),
+     * as generated from a bundle.
+     * @param content new content
+     * @param generatedLayout layout recorded while generating the content,
+     *        or <code>null</code>
+     */
+    public void setContent(String content, PropertiesLayout generatedLayout) {
+        replacing = true;
+        try {
+            getDocument().set(content);
+        } finally {
+            replacing = false;
+        }
         contentCache = content;
+        layout = null;
+        this.generatedLayout = generatedLayout;
+        clearChanges();
+    }
+
+    /**
+     * Replaces part of the content of this source editor, leaving the rest
+     * of the document (and its undo history) untouched.  The generated 
+     * layout, if any, is kept as is: updating it is up to the caller.
+     * @param offset offset of content to replace
+     * @param length length of content to replace
+     * @param text replacement text
+     * @throws BadLocationException if the given range is invalid
+     */
+    public void replaceContent(int offset, int length, String text)
+            throws BadLocationException {
+        replacing = true;
+        try {
+            getDocument().replace(offset, length, text);
+        } finally {
+            replacing = false;
+        }
+        contentCache = null;
+        layout = null;
+        clearChanges();
+    }
+
+    /**
+     * Gets the layout of the content, as last generated (then maybe 
+     * replaced in part) by this source editor.
+     * @return layout, or <code>null</code> if unknown or if the content was
+     *         edited since
+     */
+    public PropertiesLayout getGeneratedLayout() {
+        if (getDocument() != document) {
+            return null;
+        }
+        return generatedLayout;
+    }
+
+    /**
+     * Gets the document of this source editor.
+     * @return document
+     */
+    private IDocument getDocument() {
+        return editor.getDocumentProvider().getDocument(
+                editor.getEditorInput());
+    }
+
+    /**
+     * Forgets about tracked content changes.
+     */
+    private void clearChanges() {
+        changeStart = -1;
+        changeEnd = 0;
+        changeShift = 0;
     }
     
     /**
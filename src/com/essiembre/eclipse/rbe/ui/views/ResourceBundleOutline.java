@@ -29,9 +29,11 @@ import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeComparator;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeContentProvider;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.TreeViewerContributor;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeLabelProvider;
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.LazyKeyTreeContentProvider;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
@@ -48,6 +50,7 @@ import org.eclipse.ui.views.contentoutline.ContentOutlinePage;
 
 import org.eclipse.ui.IActionBars;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
 
@@ -68,6 +71,7 @@ public class ResourceBundleOutline extends ContentOutlinePage {
     private ToggleAction            flataction         ;
     private ToggleAction            hierarchicalaction ;
     private boolean                 hierarchical       ;
+    private boolean                 virtual            ;
     private TreeViewerContributor   contributor        ;
     
     
@@ -80,11 +84,27 @@ public class ResourceBundleOutline extends ContentOutlinePage {
     public ResourceBundleOutline(KeyTree keytree) {
         super();
         tree              = keytree;
-        contentprovider   = new KeyTreeContentProvider();
+        virtual           = LazyKeyTreeContentProvider.isVirtual(keytree);
+        if (virtual) {
+            contentprovider = new LazyKeyTreeContentProvider();
+        } else {
+            contentprovider = new KeyTreeContentProvider();
+        }
         hierarchical      = RBEPreferences.getKeyTreeHierarchical();
     }
     
     
+    /**
+     * {@inheritDoc}
+     */
+    protected int getTreeStyle() {
+        if (virtual) {
+            return super.getTreeStyle() | SWT.VIRTUAL;
+        }
+        return super.getTreeStyle();
+    }
+    
+    
     /**
      * {@inheritDoc}
      */
@@ -92,9 +112,12 @@ public class ResourceBundleOutline extends ContentOutlinePage {
         super.createControl(parent);
         getTreeViewer().setContentProvider(contentprovider);
         getTreeViewer().setLabelProvider(new KeyTreeLabelProvider());
+        if (!virtual) {
+            getTreeViewer().setComparator(new KeyTreeComparator());
+        }
         getTreeViewer().setUseHashlookup(true);
         getTreeViewer().setInput(tree);
-        if (RBEPreferences.getKeyTreeExpanded()) {
+        if (RBEPreferences.getKeyTreeExpanded() && !virtual) {
            ((Tree)getTreeViewer().getControl()).setRedraw(false);
            getTreeViewer().expandAll();
            ((Tree)getTreeViewer().getControl()).setRedraw(true);